@@ -0,0 +1,34 @@
+package org.middleware.client;
+
+import java.security.Principal;
+
+/**
+ * Client machine authentifié par clé API (copie immuable, partagée via le cache)
+ */
+public class ApiClientIdentity implements Principal {
+
+    public final Long id;
+    public final String companyName;
+    public final String nif;
+    // Email de l'entreprise rattachée à la clé, utilisé comme identité pour les factures
+    public final String entrepriseEmail;
+    // Expiration de la clé en millisecondes epoch, Long.MAX_VALUE si elle n'expire pas
+    public final long expiresAtMillis;
+
+    public ApiClientIdentity(Long id, String companyName, String nif, String entrepriseEmail, long expiresAtMillis) {
+        this.id = id;
+        this.companyName = companyName;
+        this.nif = nif;
+        this.entrepriseEmail = entrepriseEmail;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+
+    @Override
+    public String getName() {
+        return "api-client:" + id;
+    }
+}
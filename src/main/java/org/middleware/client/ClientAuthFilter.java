@@ -1,53 +1,94 @@
 package org.middleware.client;
 
-import jakarta.annotation.Priority;
-import jakarta.enterprise.context.ApplicationScoped;
+import java.security.Principal;
+
+import org.jboss.resteasy.reactive.server.ServerRequestFilter;
+import org.middleware.dto.ApiResponse;
+import org.middleware.service.ClientTokenService;
+
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.Priorities;
 import jakarta.ws.rs.container.ContainerRequestContext;
-import jakarta.ws.rs.container.ContainerRequestFilter;
 import jakarta.ws.rs.core.Response;
-import jakarta.ws.rs.ext.Provider;
-import org.middleware.models.ApiClient;
-import org.middleware.service.ClientTokenService;
+import jakarta.ws.rs.core.SecurityContext;
 
-// @Provider
-// @Priority(Priorities.AUTHENTICATION)
-@ApplicationScoped
-public class ClientAuthFilter implements ContainerRequestFilter {
+/**
+ * Authentification machine à machine par clé API (en-tête X-API-Key)
+ *
+ * Alternative au JWT pour les intégrations ERP: une requête sans en-tête X-API-Key
+ * suit le chemin JWT habituel. Le filtre est exécuté avant la sélection de la ressource,
+ * donc avant le contrôle des @RolesAllowed, sur le thread d'entrée/sortie: une clé
+ * en cache (valide ou récemment refusée) est résolue immédiatement, seule une clé
+ * absente des caches est cherchée en base sur un thread de travail.
+ */
+public class ClientAuthFilter {
 
-    @Inject
-    ClientTokenService tokenService;
+    public static final String API_KEY_HEADER = "X-API-Key";
 
-    @Override
-    public void filter(ContainerRequestContext ctx) {
+    // Propriété de la requête contenant l'ApiClientIdentity authentifiée
+    public static final String CLIENT_PROPERTY = "client";
 
-        String path = ctx.getUriInfo().getPath();
-        if (path.startsWith("q/") || path.equals("bridge/api/info/status")) return;
+    // Rôle accordé aux clients API (accès aux endpoints de factures)
+    public static final String CLIENT_ROLE = "USER";
 
-        String header = ctx.getHeaderString("Authorization");
+    @Inject
+    ClientTokenService tokenService;
 
-        if (header == null || !header.startsWith("Bearer ")) {
-            abort(ctx, "Clé API manquante");
-            return;
+    @ServerRequestFilter(preMatching = true, priority = Priorities.AUTHENTICATION)
+    public Uni<Response> filter(ContainerRequestContext ctx) {
+        String apiKey = ctx.getHeaderString(API_KEY_HEADER);
+        if (apiKey == null) {
+            return Uni.createFrom().nullItem();
         }
 
-        String token = header.substring(7);
-        ApiClient client = tokenService.getClient(token);
+        ApiClientIdentity cached = tokenService.getCached(apiKey);
+        if (cached != null) {
+            return Uni.createFrom().item(authenticate(ctx, cached));
+        }
+        if (tokenService.isKnownInvalid(apiKey)) {
+            return Uni.createFrom().item(authenticate(ctx, null));
+        }
+
+        return Uni.createFrom().item(() -> tokenService.getClient(apiKey))
+                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+                .map(client -> authenticate(ctx, client));
+    }
 
+    /**
+     * @return null pour poursuivre la requête, ou la réponse 401
+     */
+    private Response authenticate(ContainerRequestContext ctx, ApiClientIdentity client) {
         if (client == null) {
-            abort(ctx, "Clé API invalide");
-            return;
+            return Response.status(Response.Status.UNAUTHORIZED)
+                    .entity(ApiResponse.error("INVALID_API_KEY", "Clé API invalide, révoquée ou expirée"))
+                    .build();
         }
 
-        ctx.setProperty("client", client);
-    }
+        boolean secure = ctx.getSecurityContext() != null && ctx.getSecurityContext().isSecure();
+        ctx.setProperty(CLIENT_PROPERTY, client);
+        ctx.setSecurityContext(new SecurityContext() {
+            @Override
+            public Principal getUserPrincipal() {
+                return client;
+            }
+
+            @Override
+            public boolean isUserInRole(String role) {
+                return CLIENT_ROLE.equals(role);
+            }
+
+            @Override
+            public boolean isSecure() {
+                return secure;
+            }
 
-    private void abort(ContainerRequestContext ctx, String msg) {
-        ctx.abortWith(
-                Response.status(Response.Status.UNAUTHORIZED)
-                        .entity(msg)
-                        .build()
-        );
+            @Override
+            public String getAuthenticationScheme() {
+                return "API_KEY";
+            }
+        });
+        return null;
     }
 }
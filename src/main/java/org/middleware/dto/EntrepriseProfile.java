@@ -0,0 +1,29 @@
+package org.middleware.dto;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import org.middleware.models.Entreprise;
+
+import java.util.UUID;
+
+// Identité d'une entreprise utilisée par les requêtes (copie immuable, partagée via le cache)
+@RegisterForReflection
+public class EntrepriseProfile {
+    public final UUID id;
+    public final String email;
+    public final String nom;
+    public final String nif;
+    public final String role;
+    public final String isf;
+    // Token de l'API DGI
+    public final String token;
+
+    public EntrepriseProfile(Entreprise entreprise) {
+        this.id = entreprise.id;
+        this.email = entreprise.email;
+        this.nom = entreprise.nom;
+        this.nif = entreprise.nif;
+        this.role = entreprise.role;
+        this.isf = entreprise.isf;
+        this.token = entreprise.token;
+    }
+}
@@ -0,0 +1,38 @@
+package org.middleware.dto;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import org.middleware.models.Entreprise;
+
+import java.util.UUID;
+
+// Réponse de connexion et de rafraîchissement: jeton d'accès court, jeton de rafraîchissement
+// et profil de l'entreprise (sans mot de passe ni token DGI)
+@RegisterForReflection
+public class LoginResponse {
+    // Jeton d'accès (JWT), à envoyer dans l'en-tête Authorization: Bearer
+    public final String token;
+    public final String tokenType = "Bearer";
+    // Durée de validité du jeton d'accès, en secondes
+    public final long expiresIn;
+    // Jeton opaque à usage unique pour /entreprises/refresh
+    public final String refreshToken;
+
+    public final UUID id;
+    public final String email;
+    public final String nom;
+    public final String nif;
+    public final String role;
+    public final String isf;
+
+    public LoginResponse(Entreprise entreprise, String token, long expiresIn, String refreshToken) {
+        this.token = token;
+        this.expiresIn = expiresIn;
+        this.refreshToken = refreshToken;
+        this.id = entreprise.id;
+        this.email = entreprise.email;
+        this.nom = entreprise.nom;
+        this.nif = entreprise.nif;
+        this.role = entreprise.role;
+        this.isf = entreprise.isf;
+    }
+}
@@ -0,0 +1,31 @@
+package org.middleware.dto;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.List;
+
+// Réponse d'un import de fichier de factures
+@RegisterForReflection
+public class UploadResponse {
+    public String message;
+    public List<String> errors;
+    public List<String> createdInvoiceNumbers;
+    public int successCount;
+    public int errorCount;
+
+    public UploadResponse(String message, List<String> errors, List<String> createdInvoiceNumbers) {
+        this.message = message;
+        this.errors = errors;
+        this.createdInvoiceNumbers = createdInvoiceNumbers;
+        this.successCount = createdInvoiceNumbers != null ? createdInvoiceNumbers.size() : 0;
+        this.errorCount = errors != null ? errors.size() : 0;
+    }
+
+    // Import en flux: seuls les compteurs sont connus, errors n'en est qu'un échantillon
+    public UploadResponse(String message, List<String> errors, int successCount, int errorCount) {
+        this.message = message;
+        this.errors = errors;
+        this.successCount = successCount;
+        this.errorCount = errorCount;
+    }
+}
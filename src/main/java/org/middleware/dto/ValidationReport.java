@@ -0,0 +1,28 @@
+package org.middleware.dto;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.util.List;
+
+// Rapport de validation d'un fichier de factures (dryRun), sans persistance ni envoi DGI
+@RegisterForReflection
+public class ValidationReport {
+    public String message;
+    public int rowCount;
+    public int invoiceCount;
+    public int validCount;
+    public int errorCount;
+    public List<String> errors;
+
+    public ValidationReport(int rowCount, int invoiceCount, int validCount, List<String> errors) {
+        this.rowCount = rowCount;
+        this.invoiceCount = invoiceCount;
+        this.validCount = validCount;
+        this.errors = errors;
+        this.errorCount = errors != null ? errors.size() : 0;
+        this.message = String.format(
+            "Validation terminée. %d lignes, %d factures dont %d valides. %d erreurs.",
+            rowCount, invoiceCount, validCount, this.errorCount
+        );
+    }
+}
@@ -3,23 +3,43 @@ package org.middleware.models;
 import jakarta.persistence.*;
 
 import java.time.LocalDateTime;
-
+import java.util.UUID;
+
+/**
+ * Client machine (intégration ERP) authentifié par clé API
+ *
+ * La clé n'est jamais stockée: seule son empreinte SHA-256 (indexée) est gardée,
+ * avec son préfixe public pour identifier la clé sans la révéler.
+ * Migration des clés existantes: db/api-client-keys.sql.
+ */
 @Entity
-@Table(name = "api_clients")
+@Table(name = "api_clients", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_api_clients_key_hash", columnNames = {"api_key_hash"})
+})
 public class ApiClient {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     public Long id;
 
-    @Column(unique = true, nullable = false)
-    public String apiKey;
+    // SHA-256 de la clé, en hexadécimal
+    @Column(name = "api_key_hash", length = 64, nullable = false)
+    public String apiKeyHash;
+
+    // Début de la clé (bk_xxxxxxxx), affiché pour reconnaître la clé; lg_xxxxxxxx pour
+    // une clé antérieure au hachage (8 premiers caractères de l'ancienne clé)
+    @Column(name = "key_prefix", length = 16)
+    public String keyPrefix;
 
     public String companyName;
 
     public String nif;
 
+    // Entreprise dont le client soumet les factures (le NIF seul peut être partagé)
+    @Column(name = "entreprise_id")
+    public UUID entrepriseId;
+
     public boolean active = true;
 
     public LocalDateTime expiresAt;
-}
\ No newline at end of file
+}
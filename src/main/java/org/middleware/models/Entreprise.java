@@ -6,10 +6,13 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 
 import java.util.UUID;
 
 @Entity
+@Table(indexes = @Index(name = "idx_entreprise_email", columnList = "email"))
 public class Entreprise extends PanacheEntityBase {
     //
     @Id
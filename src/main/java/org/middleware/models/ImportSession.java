@@ -0,0 +1,118 @@
+package org.middleware.models;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Import de fichier de factures, identifié par l'empreinte SHA-256 du fichier et son propriétaire
+ *
+ * lastRow est le point de reprise: toutes les factures jusqu'à cette ligne du fichier ont
+ * été soumises. Un nouvel envoi du même fichier après un échec reprend après cette ligne.
+ */
+@Entity
+@Table(name = "import_session", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_import_session_owner_hash", columnNames = {"owner_email", "file_hash"})
+})
+public class ImportSession extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", updatable = false, nullable = false)
+    public UUID id;
+
+    @Column(name = "owner_email", nullable = false)
+    public String ownerEmail;
+
+    // SHA-256 du fichier, en hexadécimal
+    @Column(name = "file_hash", length = 64, nullable = false)
+    public String fileHash;
+
+    // RUNNING, COMPLETED, FAILED
+    @Column(name = "status", length = 20, nullable = false)
+    public String status;
+
+    // Dernière ligne du fichier dont les factures ont été soumises
+    @Column(name = "last_row", nullable = false)
+    public int lastRow;
+
+    // Nombre d'exécutions de l'import (1 pour le premier envoi)
+    @Column(name = "runs", nullable = false)
+    public int runs;
+
+    @Column(name = "created_at", updatable = false)
+    public LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    public LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Vrai si l'import reprend une exécution précédente du même fichier
+     */
+    public boolean isResumed() {
+        return runs > 1;
+    }
+
+    /**
+     * Ouvre l'import d'un fichier: nouvelle session, ou reprise de la session existante
+     *
+     * Une session terminée repart de la première ligne; une session interrompue reprend
+     * après son point de reprise. Une session en cours dont le dernier point de reprise
+     * date de moins de 'lease' est refusée (même fichier envoyé deux fois).
+     *
+     * @throws IllegalStateException si le même fichier est déjà en cours d'import
+     */
+    public static ImportSession open(String ownerEmail, String fileHash, Duration lease) {
+        ImportSession session = find("ownerEmail = ?1 and fileHash = ?2", ownerEmail, fileHash)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .firstResult();
+
+        if (session == null) {
+            session = new ImportSession();
+            session.ownerEmail = ownerEmail;
+            session.fileHash = fileHash;
+            session.status = "RUNNING";
+            session.runs = 1;
+            session.persist();
+            return session;
+        }
+
+        if ("RUNNING".equals(session.status) && session.updatedAt.isAfter(LocalDateTime.now().minus(lease))) {
+            throw new IllegalStateException("Ce fichier est déjà en cours d'import");
+        }
+        if ("COMPLETED".equals(session.status)) {
+            session.lastRow = 0;
+        }
+        session.status = "RUNNING";
+        session.runs++;
+        return session;
+    }
+
+    /**
+     * Avance le point de reprise (requête de mise à jour directe)
+     */
+    public static void checkpoint(UUID id, int lastRow) {
+        update("lastRow = ?1, updatedAt = ?2 where id = ?3 and lastRow < ?1", lastRow, LocalDateTime.now(), id);
+    }
+
+    /**
+     * Termine la session (COMPLETED ou FAILED)
+     */
+    public static void close(UUID id, String status) {
+        update("status = ?1, updatedAt = ?2 where id = ?3", status, LocalDateTime.now(), id);
+    }
+}
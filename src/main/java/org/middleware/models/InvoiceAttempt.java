@@ -0,0 +1,95 @@
+package org.middleware.models;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Historique des appels DGI effectués pour une facture (une ligne par PHASE 1 ou PHASE 2)
+ */
+@Entity
+@Table(name = "invoice_attempt", indexes = {
+        @Index(name = "idx_invoice_attempt_invoice", columnList = "invoice_id, created_at")
+})
+public class InvoiceAttempt extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", updatable = false, nullable = false)
+    public UUID id;
+
+    @Column(name = "invoice_id", nullable = false)
+    public UUID invoiceId;
+
+    @Column(name = "rn")
+    public String rn;
+
+    // PHASE1 ou PHASE2
+    @Column(name = "phase", length = 10, nullable = false)
+    public String phase;
+
+    @Column(name = "attempt", nullable = false)
+    public int attempt;
+
+    // SUCCESS, REJECTED (refus DGI), UNAVAILABLE, THROTTLED (429), ERROR, AMBIGUOUS (issue inconnue)
+    @Column(name = "outcome", length = 20, nullable = false)
+    public String outcome;
+
+    @Column(name = "error_code", length = 100)
+    public String errorCode;
+
+    @Column(name = "error_desc", columnDefinition = "text")
+    public String errorDesc;
+
+    @Column(name = "duration_ms")
+    public Long durationMs;
+
+    @Column(name = "created_at", updatable = false)
+    public LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    /**
+     * Enregistre l'issue d'un appel à partir de l'état de la facture après l'appel
+     *
+     * @param phase PHASE1 ou PHASE2
+     * @param invoice La facture mise à jour par DgiService
+     * @param durationMs Durée de l'appel (attente du limiteur comprise)
+     */
+    public static InvoiceAttempt record(String phase, InvoiceEntity invoice, long durationMs) {
+        InvoiceAttempt attempt = new InvoiceAttempt();
+        attempt.invoiceId = invoice.id;
+        attempt.rn = invoice.rn;
+        attempt.phase = phase;
+        attempt.attempt = (int) count("invoiceId = ?1 and phase = ?2", invoice.id, phase) + 1;
+        attempt.outcome = outcomeOf(invoice.errorCode);
+        attempt.errorCode = invoice.errorCode;
+        attempt.errorDesc = invoice.errorDesc;
+        attempt.durationMs = durationMs;
+        attempt.persist();
+        return attempt;
+    }
+
+    public static List<InvoiceAttempt> findByInvoice(UUID invoiceId) {
+        return list("invoiceId = ?1 order by createdAt", invoiceId);
+    }
+
+    private static String outcomeOf(String errorCode) {
+        if (errorCode == null) {
+            return "SUCCESS";
+        }
+        return switch (errorCode) {
+            case "DGI_UNAVAILABLE" -> "UNAVAILABLE";
+            case "DGI_THROTTLED" -> "THROTTLED";
+            case "DGI_PHASE1_AMBIGUOUS" -> "AMBIGUOUS";
+            case "DGI_PHASE1_ERROR", "DGI_PHASE2_ERROR" -> "ERROR";
+            default -> "REJECTED";
+        };
+    }
+}
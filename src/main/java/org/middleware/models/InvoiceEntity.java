@@ -5,17 +5,32 @@ package org.middleware.models;
 import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 import jakarta.persistence.*;
+import org.hibernate.Hibernate;
+import org.hibernate.LockOptions;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Entity
-@Table(name = "invoicerntity")
+@Table(name = "invoicerntity",
+        uniqueConstraints = @UniqueConstraint(name = "uk_invoice_nif_rn", columnNames = {"nif", "rn"}),
+        indexes = {
+                @Index(name = "idx_invoice_email_uid", columnList = "email, uid"),
+                @Index(name = "idx_invoice_status_updated", columnList = "status, updated_at")
+        })
 @RegisterForReflection
 public class InvoiceEntity extends PanacheEntityBase {
 
+    // Nombre de RN par requête "rn in (...)" (limite de paramètres du driver)
+    private static final int RN_LOOKUP_CHUNK = 1000;
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     @Column(name = "id", updatable = false, nullable = false)
@@ -50,7 +65,8 @@ public class InvoiceEntity extends PanacheEntityBase {
 
     // === COLLECTIONS PRINCIPALES ===
     @ElementCollection
-    @CollectionTable(name = "invoice_items", joinColumns = @JoinColumn(name = "invoice_id"))
+    @CollectionTable(name = "invoice_items", joinColumns = @JoinColumn(name = "invoice_id"),
+            indexes = @Index(name = "idx_invoice_items_invoice", columnList = "invoice_id"))
     public List<Item> items = new ArrayList<>();
 
     @Embedded
@@ -97,7 +113,8 @@ public class InvoiceEntity extends PanacheEntityBase {
     public String nim;
 
     @ElementCollection
-    @CollectionTable(name = "invoice_payments", joinColumns = @JoinColumn(name = "invoice_id"))
+    @CollectionTable(name = "invoice_payments", joinColumns = @JoinColumn(name = "invoice_id"),
+            indexes = @Index(name = "idx_invoice_payments_invoice", columnList = "invoice_id"))
     public List<Payment> payments = new ArrayList<>();
 
     // === CHAMPS POUR FACTURES D'AVOIR ===
@@ -134,6 +151,7 @@ public class InvoiceEntity extends PanacheEntityBase {
     @Column(name = "updated_at")
     public LocalDateTime updatedAt;
 
+    // PENDING, SUBMITTING (PHASE 1 en vol), PHASE1, CONFIRMED, SUBMIT_UNKNOWN (issue de la PHASE 1 inconnue)
     @Column(name = "status", length = 20)
     public String status = "PENDING";
 
@@ -143,6 +161,18 @@ public class InvoiceEntity extends PanacheEntityBase {
     @Column(name = "dgi_token", columnDefinition = "text")
     public String dgiToken;
 
+    // Fin du bail d'une réservation SUBMITTING; au-delà, la facture passe en SUBMIT_UNKNOWN
+    @Column(name = "submit_lease_until")
+    public LocalDateTime submitLeaseUntil;
+
+    // Tentatives de soumission (PHASE 1) consommées sur le budget de la facture
+    @Column(name = "submit_attempts")
+    public Integer submitAttempts;
+
+    // Tentatives de confirmation (PHASE 2) effectuées par le balayage de réconciliation
+    @Column(name = "confirm_attempts")
+    public Integer confirmAttempts;
+
     // === GESTION DES ERREURS ===
     @Column(name = "error_code", length = 100)
     public String errorCode;
@@ -264,6 +294,150 @@ public class InvoiceEntity extends PanacheEntityBase {
         return list("status", status);
     }
 
+    /**
+     * Charge une facture avec ses collections, prête à être utilisée hors transaction
+     * (sérialisation vers la DGI pendant une soumission asynchrone)
+     */
+    public static InvoiceEntity findForSubmission(UUID id) {
+        InvoiceEntity invoice = findById(id);
+        if (invoice != null) {
+            Hibernate.initialize(invoice.items);
+            Hibernate.initialize(invoice.payments);
+        }
+        return invoice;
+    }
+
+    /**
+     * Facture d'une entreprise par son numéro: le RN n'est unique que pour un même NIF
+     */
+    public static InvoiceEntity findByRn(String nif, String rn) {
+        return find("nif = ?1 and rn = ?2", nif, rn).firstResult();
+    }
+
+    /**
+     * Factures existantes d'une entreprise pour un ensemble de RN, indexées par RN
+     *
+     * Une requête {@code rn in (...)} par tranche de {@link #RN_LOOKUP_CHUNK} RN au lieu
+     * d'une requête par facture lors des imports.
+     */
+    public static Map<String, InvoiceEntity> findByRns(String nif, Collection<String> rns) {
+        Map<String, InvoiceEntity> existing = new HashMap<>();
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(rns));
+        for (int from = 0; from < distinct.size(); from += RN_LOOKUP_CHUNK) {
+            List<String> chunk = distinct.subList(from, Math.min(from + RN_LOOKUP_CHUNK, distinct.size()));
+            List<InvoiceEntity> found = list("nif = ?1 and rn in ?2", nif, chunk);
+            found.forEach(invoice -> existing.put(invoice.rn, invoice));
+        }
+        return existing;
+    }
+
+    /**
+     * Réserve une facture PENDING pour la PHASE 1 (compare-and-set en base)
+     *
+     * Une seule soumission peut passer à la fois, et seulement tant que le budget
+     * de tentatives n'est pas épuisé. La réservation est un bail: si son issue n'est
+     * pas enregistrée avant {@code lease} (arrêt brutal, erreur d'écriture), la facture
+     * est reprise par {@link #expireSubmissionLeases(LocalDateTime, LocalDateTime)}.
+     *
+     * @return true si la facture est passée en SUBMITTING
+     */
+    public static boolean claimForSubmission(UUID id, int maxAttempts, Duration lease) {
+        LocalDateTime now = LocalDateTime.now();
+        return update("status = ?1, submitAttempts = coalesce(submitAttempts, 0) + 1, updatedAt = ?2, submitLeaseUntil = ?3 "
+                        + "where id = ?4 and status = ?5 and (submitAttempts is null or submitAttempts < ?6)",
+                "SUBMITTING", now, now.plus(lease), id, "PENDING", maxAttempts) == 1;
+    }
+
+    /**
+     * Passe en SUBMIT_UNKNOWN les réservations SUBMITTING dont le bail a expiré
+     *
+     * La PHASE 1 a pu atteindre la DGI: la facture n'est pas remise en PENDING mais
+     * attend une résolution (confirmation par RN ou nouvelle soumission explicite).
+     * Les réservations sans bail (antérieures à la colonne) expirent d'après updatedAt.
+     *
+     * @param now Instant de référence pour les baux
+     * @param legacyBefore Limite updatedAt des réservations sans bail
+     * @return Le nombre de factures reprises
+     */
+    public static int expireSubmissionLeases(LocalDateTime now, LocalDateTime legacyBefore) {
+        return update("status = ?1, errorCode = ?2, errorDesc = ?3, submitLeaseUntil = null, updatedAt = ?4 "
+                        + "where status = ?5 and (submitLeaseUntil < ?4 or (submitLeaseUntil is null and updatedAt < ?6))",
+                "SUBMIT_UNKNOWN", "SUBMISSION_LEASE_EXPIRED",
+                "Issue de la PHASE 1 non enregistrée avant l'expiration de la réservation",
+                now, "SUBMITTING", legacyBefore);
+    }
+
+    /**
+     * Enregistre l'issue d'un appel DGI calculée sur une copie détachée de la facture
+     *
+     * La ligne est relue sous verrou (SELECT ... FOR UPDATE) et l'issue n'est appliquée
+     * que si elle ne fait pas reculer la facture: une soumission et le balayage de
+     * réconciliation traitant la même facture ne peuvent pas ramener une facture
+     * CONFIRMED en PHASE1. Les compteurs de tentatives, tenus par des mises à jour
+     * conditionnelles, ne sont pas recopiés.
+     *
+     * @return La facture en base après enregistrement (gérée par la transaction courante)
+     */
+    public static InvoiceEntity applyResult(InvoiceEntity result) {
+        InvoiceEntity current = find("id", result.id)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .firstResult();
+        if (current == null) {
+            return result;
+        }
+        // Utilisable hors transaction, comme la copie reçue
+        Hibernate.initialize(current.items);
+        Hibernate.initialize(current.payments);
+        if (progress(result.status) < progress(current.status)) {
+            return current;
+        }
+
+        current.status = result.status;
+        current.uid = result.uid;
+        current.total = result.total;
+        current.curTotal = result.curTotal;
+        current.vtotal = result.vtotal;
+        current.dateTime = result.dateTime;
+        current.qrCode = result.qrCode;
+        current.codeDEFDGI = result.codeDEFDGI;
+        current.counters = result.counters;
+        current.nim = result.nim;
+        current.errorCode = result.errorCode;
+        current.errorDesc = result.errorDesc;
+        if (!"SUBMITTING".equals(current.status)) {
+            current.submitLeaseUntil = null;
+        }
+        return current;
+    }
+
+    /**
+     * Avancement d'un statut: SUBMITTING appartient à la soumission qui l'a réservé et
+     * peut revenir à PENDING; SUBMIT_UNKNOWN ne redevient PENDING que par une résolution
+     */
+    private static int progress(String status) {
+        if (status == null) {
+            return 0;
+        }
+        return switch (status) {
+            case "SUBMIT_UNKNOWN" -> 1;
+            case "PHASE1" -> 2;
+            case "CONFIRMED" -> 3;
+            default -> 0;
+        };
+    }
+
+    /**
+     * Factures restées en PHASE1 depuis avant {@code before}, candidates à une nouvelle confirmation
+     */
+    public static List<InvoiceEntity> findStuckInPhase1(LocalDateTime before, int maxAttempts, int limit) {
+        return find("status = ?1 and updatedAt < ?2 and (confirmAttempts is null or confirmAttempts < ?3) order by updatedAt",
+                "PHASE1", before, maxAttempts)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .withHint("jakarta.persistence.lock.timeout", LockOptions.SKIP_LOCKED)
+                .page(0, limit)
+                .list();
+    }
+
     public static InvoiceEntity findByReference(String reference) {
         return find("reference", reference).firstResult();
     }
@@ -0,0 +1,83 @@
+package org.middleware.models;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Demande de soumission DGI en attente (pattern outbox)
+ *
+ * Enregistrée dans la même transaction que la facture, puis traitée par
+ * InvoiceOutboxDispatcher hors de la requête HTTP.
+ */
+@Entity
+@Table(name = "invoice_outbox", indexes = {
+        @Index(name = "idx_invoice_outbox_status_next", columnList = "status, next_attempt_at"),
+        @Index(name = "idx_invoice_outbox_invoice", columnList = "invoice_id")
+})
+public class InvoiceOutbox extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", updatable = false, nullable = false)
+    public UUID id;
+
+    @Column(name = "invoice_id", nullable = false)
+    public UUID invoiceId;
+
+    // PENDING, IN_PROGRESS, DONE, FAILED
+    @Column(name = "status", length = 20, nullable = false)
+    public String status = "PENDING";
+
+    @Column(name = "attempts", nullable = false)
+    public int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    public LocalDateTime nextAttemptAt;
+
+    // Fin du bail de l'instance qui traite la ligne (reprise après crash)
+    @Column(name = "locked_until")
+    public LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", columnDefinition = "text")
+    public String lastError;
+
+    @Column(name = "created_at", updatable = false)
+    public LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    public LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Ajoute une demande de soumission, sauf si une demande est déjà en attente
+     */
+    public static InvoiceOutbox enqueue(UUID invoiceId) {
+        InvoiceOutbox existing = find("invoiceId = ?1 and status in ?2", invoiceId, List.of("PENDING", "IN_PROGRESS"))
+                .firstResult();
+        if (existing != null) {
+            return existing;
+        }
+
+        InvoiceOutbox outbox = new InvoiceOutbox();
+        outbox.invoiceId = invoiceId;
+        outbox.persist();
+        return outbox;
+    }
+}
@@ -0,0 +1,72 @@
+package org.middleware.models;
+
+import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Jeton de rafraîchissement d'une entreprise (rotation à chaque usage)
+ *
+ * Seule l'empreinte SHA-256 du jeton est stockée. Un jeton déjà utilisé qui est
+ * présenté de nouveau signale un vol: tous les jetons de l'entreprise sont révoqués.
+ */
+@Entity
+@Table(name = "refresh_token", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_refresh_token_hash", columnNames = {"token_hash"})
+}, indexes = {
+        @Index(name = "idx_refresh_token_entreprise", columnList = "entreprise_id")
+})
+public class RefreshToken extends PanacheEntityBase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    @Column(name = "id", updatable = false, nullable = false)
+    public UUID id;
+
+    // SHA-256 du jeton, en hexadécimal
+    @Column(name = "token_hash", length = 64, nullable = false)
+    public String tokenHash;
+
+    @Column(name = "entreprise_id", nullable = false)
+    public UUID entrepriseId;
+
+    @Column(name = "expires_at", nullable = false)
+    public LocalDateTime expiresAt;
+
+    // Date d'utilisation (rotation) ou de révocation; null tant que le jeton est utilisable
+    @Column(name = "revoked_at")
+    public LocalDateTime revokedAt;
+
+    @Column(name = "created_at", updatable = false)
+    public LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    /**
+     * Jeton par empreinte, verrouillé pour la rotation
+     */
+    public static RefreshToken findForRotation(String tokenHash) {
+        return find("tokenHash", tokenHash)
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .firstResult();
+    }
+
+    /**
+     * Révoque tous les jetons encore utilisables d'une entreprise (requête de mise à jour directe)
+     */
+    public static int revokeAll(UUID entrepriseId) {
+        return update("revokedAt = ?1 where entrepriseId = ?2 and revokedAt is null", LocalDateTime.now(), entrepriseId);
+    }
+
+    /**
+     * Supprime les jetons expirés
+     */
+    public static long purgeExpired() {
+        return delete("expiresAt < ?1", LocalDateTime.now());
+    }
+}
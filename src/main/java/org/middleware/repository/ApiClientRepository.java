@@ -9,8 +9,11 @@ import java.time.LocalDateTime;
 @ApplicationScoped
 public class ApiClientRepository implements PanacheRepository<ApiClient> {
 
-    public ApiClient findValidClient(String token) {
-        return find("apiKey = ?1 and active = true", token)
+    /**
+     * Client actif et non expiré par empreinte de clé (index uk_api_clients_key_hash)
+     */
+    public ApiClient findValidClient(String apiKeyHash, LocalDateTime now) {
+        return find("apiKeyHash = ?1 and active = true and (expiresAt is null or expiresAt > ?2)", apiKeyHash, now)
                 .firstResult();
     }
 }
@@ -0,0 +1,145 @@
+package org.middleware.resource;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.middleware.dto.ApiResponse;
+import org.middleware.models.ApiClient;
+import org.middleware.models.Entreprise;
+import org.middleware.repository.ApiClientRepository;
+import org.middleware.service.ClientTokenService;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Administration des clés API des intégrations ERP
+ */
+@Path("/api/clients")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+@RolesAllowed({"ADMIN"})
+public class ApiClientResource {
+
+    @Inject
+    ApiClientRepository repository;
+
+    @Inject
+    ClientTokenService tokenService;
+
+    /**
+     * Client API sans sa clé
+     */
+    public record ApiClientView(Long id, String keyPrefix, String companyName, String nif, UUID entrepriseId,
+            boolean active, LocalDateTime expiresAt) {
+
+        static ApiClientView of(ApiClient client) {
+            return new ApiClientView(client.id, client.keyPrefix, client.companyName, client.nif, client.entrepriseId,
+                    client.active, client.expiresAt);
+        }
+    }
+
+    // ========= DTO CREATE =========
+    public static class CreateRequest {
+        public String companyName;
+        // Entreprise du client; à défaut, le NIF doit désigner une seule entreprise
+        public UUID entrepriseId;
+        public String nif;
+        // Optionnelle: sans date, la clé reste valide jusqu'à sa révocation
+        public LocalDateTime expiresAt;
+    }
+
+    /**
+     * Client créé, avec sa clé: elle n'est renvoyée qu'à la création
+     */
+    public record CreatedClient(ApiClientView client, String apiKey) {
+    }
+
+    @GET
+    public List<ApiClientView> list() {
+        return repository.listAll().stream().map(ApiClientView::of).toList();
+    }
+
+    /**
+     * Crée un client API pour une entreprise, désignée par son id ou par un NIF non ambigu
+     */
+    @POST
+    @Transactional
+    public Response create(CreateRequest request) {
+        if (request == null || (request.entrepriseId == null && (request.nif == null || request.nif.isBlank()))) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ApiResponse.error("INVALID_REQUEST", "L'entreprise (entrepriseId ou NIF) est obligatoire"))
+                    .build();
+        }
+
+        Entreprise entreprise;
+        if (request.entrepriseId != null) {
+            entreprise = Entreprise.findById(request.entrepriseId);
+            if (entreprise == null) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(ApiResponse.error("UNKNOWN_ENTREPRISE", "Aucune entreprise avec l'id " + request.entrepriseId))
+                        .build();
+            }
+        } else {
+            List<Entreprise> matches = Entreprise.list("nif", request.nif);
+            if (matches.isEmpty()) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(ApiResponse.error("UNKNOWN_NIF", "Aucune entreprise avec le NIF " + request.nif))
+                        .build();
+            }
+            if (matches.size() > 1) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(ApiResponse.error("AMBIGUOUS_NIF",
+                                "Plusieurs entreprises ont le NIF " + request.nif + ": préciser entrepriseId"))
+                        .build();
+            }
+            entreprise = matches.get(0);
+        }
+
+        ClientTokenService.IssuedKey key = tokenService.issueKey();
+        ApiClient client = new ApiClient();
+        client.apiKeyHash = key.apiKeyHash();
+        client.keyPrefix = key.keyPrefix();
+        client.companyName = request.companyName;
+        client.nif = entreprise.nif;
+        client.entrepriseId = entreprise.id;
+        client.expiresAt = request.expiresAt;
+        repository.persist(client);
+        // Une recherche antérieure de cette clé a pu être mise en cache comme inconnue
+        tokenService.invalidate(client.apiKeyHash);
+
+        return Response.status(Response.Status.CREATED)
+                .entity(ApiResponse.success(new CreatedClient(ApiClientView.of(client), key.apiKey()),
+                        "Client API créé: conservez la clé, elle ne sera plus affichée"))
+                .build();
+    }
+
+    /**
+     * Révoque une clé: refusée dès la requête suivante (retrait du cache)
+     */
+    @POST
+    @Path("/{id}/revoke")
+    @Transactional
+    public Response revoke(@PathParam("id") Long id) {
+        ApiClient client = repository.findById(id);
+        if (client == null) {
+            return Response.status(Response.Status.NOT_FOUND)
+                    .entity(ApiResponse.error("NOT_FOUND", "Client API introuvable"))
+                    .build();
+        }
+
+        client.active = false;
+        tokenService.invalidate(client.apiKeyHash);
+        return Response.ok(ApiResponse.success(ApiClientView.of(client), "Clé API révoquée")).build();
+    }
+}
@@ -0,0 +1,47 @@
+package org.middleware.resource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.middleware.service.DgiClient;
+import org.middleware.service.DgiRateLimiter;
+import org.middleware.service.Phase2ReconciliationSweeper;
+
+import io.smallrye.faulttolerance.api.CircuitBreakerMaintenance;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+@Path("/api/dgi/metrics")
+@Produces(MediaType.APPLICATION_JSON)
+public class DgiMetricsResource {
+
+    @Inject
+    Phase2ReconciliationSweeper phase2Sweeper;
+
+    @Inject
+    DgiRateLimiter rateLimiter;
+
+    @Inject
+    CircuitBreakerMaintenance circuitBreakers;
+
+    @GET
+    @RolesAllowed({"ADMIN"})
+    @Operation(summary = "Compteurs d'exploitation des échanges avec la DGI")
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("phase2Reconciliation", phase2Sweeper.getMetrics());
+        metrics.put("rateLimiter", rateLimiter.getMetrics());
+
+        // CLOSED, OPEN ou HALF_OPEN pour chaque point d'accès DGI
+        Map<String, Object> breakers = new HashMap<>();
+        breakers.put(DgiClient.SUBMIT_BREAKER, circuitBreakers.currentState(DgiClient.SUBMIT_BREAKER));
+        breakers.put(DgiClient.CONFIRM_BREAKER, circuitBreakers.currentState(DgiClient.CONFIRM_BREAKER));
+        metrics.put("circuitBreakers", breakers);
+        return metrics;
+    }
+}
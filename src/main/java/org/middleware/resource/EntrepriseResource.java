@@ -4,13 +4,19 @@ package org.middleware.resource;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.middleware.dto.EntrepriseProfile;
+import org.middleware.dto.LoginResponse;
 import org.middleware.models.Entreprise;
-import org.middleware.service.JwtService;
-import org.mindrot.jbcrypt.BCrypt;
+import org.middleware.service.AuthTokenService;
+import org.middleware.service.EntrepriseDirectory;
+import org.middleware.service.PasswordHasher;
 
+import io.quarkus.narayana.jta.QuarkusTransaction;
 import jakarta.annotation.security.PermitAll;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
@@ -25,6 +31,7 @@ import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.ServiceUnavailableException;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
@@ -33,12 +40,20 @@ import jakarta.ws.rs.core.Response;
 @Consumes(MediaType.APPLICATION_JSON)
 public class EntrepriseResource {
 
+    // Délai suggéré aux clients refusés (pool de hachage ou connexions saturés)
+    private static final long RETRY_AFTER_SECONDS = 1;
 
     @Inject
     JsonWebToken jwt;
 
     @Inject
-    JwtService jwtService;
+    EntrepriseDirectory entrepriseDirectory;
+
+    @Inject
+    PasswordHasher passwordHasher;
+
+    @Inject
+    AuthTokenService authTokenService;
 
     // ========= DTO LOGIN =========
     public static class LoginRequest {
@@ -46,6 +61,11 @@ public class EntrepriseResource {
         public String password;
     }
 
+    // ========= DTO REFRESH/LOGOUT =========
+    public static class RefreshRequest {
+        public String refreshToken;
+    }
+
     // ========= DTO CREATE/UPDATE =========
     public static class UserDTO {
         public String email;
@@ -82,7 +102,7 @@ public class EntrepriseResource {
         }
 
         // Trouver l'utilisateur par email
-        Entreprise usAdmin = Entreprise.find("email", email).firstResult();
+        EntrepriseProfile usAdmin = entrepriseDirectory.findByEmail(email);
         if (usAdmin == null) {
             throw new NotFoundException("Utilisateur non trouvé");
         }
@@ -102,13 +122,13 @@ public class EntrepriseResource {
     @GET
     @RolesAllowed("USER")
     @Path("/current")
-    public Entreprise getAdmin() {
+    public EntrepriseProfile getAdmin() {
         String email = jwt.getClaim("email");
         if (email == null) {
             throw new NotAuthorizedException("Token invalide");
         }
 
-        Entreprise user = Entreprise.find("email", email).firstResult();
+        EntrepriseProfile user = entrepriseDirectory.findByEmail(email);
         if (user == null) {
             throw new NotAuthorizedException("Utilisateur non trouvé");
         }
@@ -151,14 +171,21 @@ public class EntrepriseResource {
         user.nif = dto.nif;
         user.email = dto.email;
         user.isf = dto.isf;
-        user.password = BCrypt.hashpw(dto.password, BCrypt.gensalt());//dto.password;
+        try {
+            user.password = passwordHasher.hash(dto.password);
+        } catch (RejectedExecutionException e) {
+            return saturated();
+        }
         user.nom = dto.nom;
         user.token = dto.token;
         user.persist();
+        // Un email inconnu a pu être mis en cache (absence)
+        entrepriseDirectory.invalidate(user.email);
 
-        //jwtService.generateJWT(user);
+        LoginResponse tokens = authTokenService.issue(user);
         HashMap data = new HashMap();
-        data.put("bridge_toke", jwtService.generateJWT(user));
+        data.put("bridge_toke", tokens.token);
+        data.put("refresh_token", tokens.refreshToken);
         data.put("data", user);
 
         return Response.created(URI.create("/users/" + user.id))
@@ -175,19 +202,35 @@ public class EntrepriseResource {
         if (user == null) {
             throw new NotFoundException("Utilisateur non trouvé");
         }
+        entrepriseDirectory.invalidate(user.email);
+        String previousRole = user.role;
+        String previousEmail = user.email;
 
         user.email = dto.email != null ? dto.email : user.email;
         user.role = dto.role;
         user.nif = dto.nif;
-        user.email = dto.email;
         user.isf = dto.isf;
-        user.password = dto.password;
         user.nom = dto.nom;
-        user.token = jwtService.generateJWT(user);
+        // Token de l'API DGI, inchangé s'il n'est pas fourni
+        if (dto.token != null) {
+            user.token = dto.token;
+        }
 
-        if (dto.password != null && !dto.password.isEmpty()) {
-            user.password = BCrypt.hashpw(dto.password, BCrypt.gensalt());
+        // Mot de passe inchangé s'il n'est pas fourni
+        boolean passwordChanged = dto.password != null && !dto.password.isEmpty();
+        if (passwordChanged) {
+            try {
+                user.password = passwordHasher.hash(dto.password);
+            } catch (RejectedExecutionException e) {
+                throw new ServiceUnavailableException("Service surchargé, réessayez plus tard", RETRY_AFTER_SECONDS);
+            }
         }
+        // Les jetons émis portent l'ancien rôle, l'ancien email ou l'ancien mot de passe: reconnexion obligatoire
+        if (passwordChanged || !Objects.equals(previousRole, user.role)
+                || !Objects.equals(previousEmail, user.email)) {
+            authTokenService.revokeAll(user.id);
+        }
+        entrepriseDirectory.invalidate(user.email);
 
         return user;
     }
@@ -196,7 +239,12 @@ public class EntrepriseResource {
     @Path("/{id}")
     @Transactional
     public void delete(@PathParam("id") UUID id) {
-        Entreprise.deleteById(id);
+        Entreprise user = Entreprise.findById(id);
+        if (user != null) {
+            user.delete();
+            authTokenService.revokeAll(user.id);
+            entrepriseDirectory.invalidate(user.email);
+        }
     }
 
     // -------------------------
@@ -206,19 +254,100 @@ public class EntrepriseResource {
     @POST
     @Path("/login")
     public Response login(LoginRequest request) {
+        if (!passwordHasher.tryEnterLogin()) {
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", RETRY_AFTER_SECONDS)
+                    .entity("Trop de connexions simultanées, réessayez plus tard")
+                    .build();
+        }
 
-        Entreprise entreprise = Entreprise.find("email", request.email).firstResult();
+        Entreprise entreprise;
+        try {
+            entreprise = Entreprise.find("email", request.email).firstResult();
+
+            if (entreprise == null || !passwordHasher.verify(request.password, entreprise.password)) {
+                return Response.status(Response.Status.UNAUTHORIZED)
+                        .entity("Email ou mot de passe incorrect")
+                        .build();
+            }
+
+            rehashIfNeeded(entreprise, request.password);
+        } catch (RejectedExecutionException e) {
+            return saturated();
+        } finally {
+            passwordHasher.exitLogin();
+        }
+        // Réponse sans mot de passe ni token DGI
+        LoginResponse tokens = QuarkusTransaction.requiringNew().call(() -> authTokenService.issue(entreprise));
+        return Response.ok(tokens).build();
+    }
 
-        if (entreprise == null || !BCrypt.checkpw(request.password, entreprise.password)) {
+    /**
+     * Nouveau jeton d'accès contre un jeton de rafraîchissement (remplacé à chaque appel)
+     */
+    @POST
+    @Path("/refresh")
+    @PermitAll
+    public Response refresh(RefreshRequest request) {
+        LoginResponse tokens = authTokenService.refresh(request != null ? request.refreshToken : null);
+        if (tokens == null) {
             return Response.status(Response.Status.UNAUTHORIZED)
-                    .entity("Email ou mot de passe incorrect")
+                    .entity("Jeton de rafraîchissement invalide, expiré ou déjà utilisé")
                     .build();
         }
-        // ⚠️ IMPORTANT : ne jamais renvoyer le password hash
-        entreprise.password = null;
-        entreprise.token = jwtService.generateJWT(entreprise);
+        return Response.ok(tokens).build();
+    }
+
+    /**
+     * Révoque le jeton d'accès courant et le jeton de rafraîchissement fourni
+     */
+    @POST
+    @Path("/logout")
+    @RolesAllowed({"ADMIN", "USER"})
+    public Response logout(RefreshRequest request) {
+        authTokenService.logout(jwt, request != null ? request.refreshToken : null);
+        return Response.noContent().build();
+    }
 
-        return Response.ok(entreprise).build();
+    /**
+     * Coupe une entreprise: tous ses jetons sont refusés, une nouvelle connexion est nécessaire
+     */
+    @POST
+    @Path("/{id}/revoke-tokens")
+    @RolesAllowed({"ADMIN"})
+    @Transactional
+    public Response revokeTokens(@PathParam("id") UUID id) {
+        if (Entreprise.findById(id) == null) {
+            throw new NotFoundException("Utilisateur non trouvé");
+        }
+        authTokenService.revokeAll(id);
+        return Response.noContent().build();
+    }
+
+    /**
+     * Remplace un hachage produit avec un autre coût BCrypt (le mot de passe est connu à la connexion)
+     *
+     * Pool saturé: la connexion aboutit quand même, le hachage sera remplacé à la suivante.
+     */
+    private void rehashIfNeeded(Entreprise entreprise, String password) {
+        if (!passwordHasher.needsRehash(entreprise.password)) {
+            return;
+        }
+        try {
+            String rehashed = passwordHasher.hash(password);
+            UUID id = entreprise.id;
+            QuarkusTransaction.requiringNew().run(() ->
+                    Entreprise.update("password = ?1 where id = ?2", rehashed, id));
+        } catch (RejectedExecutionException e) {
+            // Remplacé à la prochaine connexion
+        }
+    }
+
+    private Response saturated() {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", RETRY_AFTER_SECONDS)
+                .entity("Service surchargé, réessayez plus tard")
+                .build();
     }
 
 }
\ No newline at end of file
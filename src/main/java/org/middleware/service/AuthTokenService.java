@@ -0,0 +1,130 @@
+package org.middleware.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.middleware.dto.LoginResponse;
+import org.middleware.models.Entreprise;
+import org.middleware.models.RefreshToken;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Jetons des entreprises: jeton d'accès court (JWT) et jeton de rafraîchissement en rotation
+ *
+ * Le jeton de rafraîchissement est opaque et à usage unique: chaque rafraîchissement
+ * le remplace. Sa réutilisation révoque tous les jetons de l'entreprise.
+ */
+@ApplicationScoped
+public class AuthTokenService {
+
+    private static final Logger LOG = Logger.getLogger(AuthTokenService.class.getName());
+
+    @Inject
+    JwtService jwtService;
+
+    @Inject
+    TokenDenylist denylist;
+
+    @ConfigProperty(name = "dgi.auth.refresh-token-ttl", defaultValue = "P30D")
+    Duration refreshTokenTtl;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Émet un jeton d'accès et un jeton de rafraîchissement (à appeler dans une transaction)
+     */
+    public LoginResponse issue(Entreprise entreprise) {
+        byte[] secret = new byte[32];
+        random.nextBytes(secret);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+
+        RefreshToken stored = new RefreshToken();
+        stored.tokenHash = hash(refreshToken);
+        stored.entrepriseId = entreprise.id;
+        stored.expiresAt = LocalDateTime.now().plus(refreshTokenTtl);
+        stored.persist();
+
+        return new LoginResponse(entreprise, jwtService.generateJWT(entreprise),
+                jwtService.accessTokenTtlSeconds(), refreshToken);
+    }
+
+    /**
+     * Remplace un jeton de rafraîchissement par une nouvelle paire de jetons
+     *
+     * @return null si le jeton est inconnu, expiré ou déjà utilisé
+     */
+    public LoginResponse refresh(String refreshToken) {
+        if (refreshToken == null || refreshToken.isBlank()) {
+            return null;
+        }
+        return QuarkusTransaction.requiringNew().call(() -> {
+            RefreshToken stored = RefreshToken.findForRotation(hash(refreshToken));
+            if (stored == null || stored.expiresAt.isBefore(LocalDateTime.now())) {
+                return null;
+            }
+            if (stored.revokedAt != null) {
+                // Jeton déjà utilisé: copié par un tiers, l'entreprise est déconnectée partout
+                LOG.warning("Jeton de rafraîchissement réutilisé pour l'entreprise " + stored.entrepriseId
+                        + ": tous ses jetons sont révoqués");
+                revokeAll(stored.entrepriseId);
+                return null;
+            }
+
+            stored.revokedAt = LocalDateTime.now();
+            Entreprise entreprise = Entreprise.findById(stored.entrepriseId);
+            return entreprise != null ? issue(entreprise) : null;
+        });
+    }
+
+    /**
+     * Déconnexion: révoque le jeton d'accès courant et, s'il est fourni, le jeton de rafraîchissement
+     */
+    public void logout(JsonWebToken accessToken, String refreshToken) {
+        denylist.revoke(accessToken);
+        if (refreshToken != null && !refreshToken.isBlank()) {
+            QuarkusTransaction.requiringNew().run(() ->
+                    RefreshToken.update("revokedAt = ?1 where tokenHash = ?2 and revokedAt is null",
+                            LocalDateTime.now(), hash(refreshToken)));
+        }
+    }
+
+    /**
+     * Coupe une entreprise: jetons d'accès refusés immédiatement, jetons de rafraîchissement révoqués
+     * (dans la transaction courante)
+     */
+    public void revokeAll(UUID entrepriseId) {
+        denylist.revokeSubject(entrepriseId);
+        RefreshToken.revokeAll(entrepriseId);
+    }
+
+    @Scheduled(every = "1h", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purgeExpired() {
+        long deleted = QuarkusTransaction.requiringNew().call(RefreshToken::purgeExpired);
+        if (deleted > 0) {
+            LOG.info(deleted + " jetons de rafraîchissement expirés supprimés");
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,18 +1,213 @@
 package org.middleware.service;
 
-import jakarta.enterprise.context.ApplicationScoped;
-import jakarta.inject.Inject;
-import org.eclipse.microprofile.config.inject.ConfigProperty;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+import org.middleware.client.ApiClientIdentity;
 import org.middleware.models.ApiClient;
+import org.middleware.models.Entreprise;
 import org.middleware.repository.ApiClientRepository;
 
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import io.quarkus.cache.CaffeineCache;
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Résolution des clés API des clients machine, avec cache en mémoire
+ *
+ * Les clés sont cherchées et mises en cache par leur empreinte SHA-256: aucune clé
+ * en clair n'est gardée, ni en base ni en mémoire. Les clés valides sont mises en cache
+ * (Caffeine, borné et à expiration, voir application.properties), jamais au-delà de
+ * leur propre expiration. Les clés inconnues ont leur propre cache, plus petit et plus
+ * court: des clés erronées ne peuvent pas évincer les clés valides, et une même clé
+ * erronée répétée n'interroge la base qu'une fois par expiration. La création, la
+ * révocation ou la modification d'une clé doit appeler invalidate.
+ */
 @ApplicationScoped
 public class ClientTokenService {
 
+    private static final Logger LOG = Logger.getLogger(ClientTokenService.class.getName());
+
+    // Préfixe des clés émises: identifie une clé dans les journaux sans la révéler
+    private static final String KEY_PREFIX = "bk_";
+
     @Inject
     ApiClientRepository repository;
 
-    public ApiClient getClient(String token) {
-        return repository.findValidClient(token);
+    @Inject
+    TransactionSynchronizationRegistry transactions;
+
+    public static final String CACHE_NAME = "api-keys";
+
+    public static final String UNKNOWN_CACHE_NAME = "api-keys-unknown";
+
+    @Inject
+    @CacheName(CACHE_NAME)
+    Cache cache;
+
+    // Empreintes sans client valide (clé inconnue, révoquée ou expirée)
+    @Inject
+    @CacheName(UNKNOWN_CACHE_NAME)
+    Cache unknownKeys;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Recherche en cache uniquement, sans accès à la base (utilisable sur le thread d'entrée/sortie)
+     *
+     * @return null si la clé n'est pas en cache ou si elle a expiré
+     */
+    public ApiClientIdentity getCached(String apiKey) {
+        return cached(hash(apiKey));
+    }
+
+    /**
+     * Vrai si la clé a été cherchée récemment sans succès (cache uniquement, sans accès à la base)
+     */
+    public boolean isKnownInvalid(String apiKey) {
+        return isUnknown(hash(apiKey));
+    }
+
+    private boolean isUnknown(String hash) {
+        CompletableFuture<Object> entry = unknownKeys.as(CaffeineCache.class).getIfPresent(hash);
+        return entry != null && entry.isDone() && !entry.isCompletedExceptionally();
+    }
+
+    private ApiClientIdentity cached(String hash) {
+        CompletableFuture<Object> entry = cache.as(CaffeineCache.class).getIfPresent(hash);
+        if (entry == null || !entry.isDone() || entry.isCompletedExceptionally()) {
+            return null;
+        }
+        ApiClientIdentity client = (ApiClientIdentity) entry.join();
+        if (client.isExpired(System.currentTimeMillis())) {
+            // Sans attente: cette méthode peut s'exécuter sur le thread d'entrée/sortie
+            cache.invalidate(hash).subscribe().with(ignored -> { });
+            return null;
+        }
+        return client;
+    }
+
+    /**
+     * Client actif et non expiré correspondant à la clé, ou null
+     *
+     * Appel bloquant en cas d'absence du cache (requête en base par empreinte).
+     */
+    public ApiClientIdentity getClient(String apiKey) {
+        if (apiKey == null || apiKey.isBlank()) {
+            return null;
+        }
+        String hash = hash(apiKey);
+        ApiClientIdentity cached = cached(hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        if (isUnknown(hash)) {
+            return null;
+        }
+
+        ApiClientIdentity client = QuarkusTransaction.requiringNew().call(() -> load(hash));
+        if (client != null) {
+            cache.as(CaffeineCache.class).put(hash, CompletableFuture.completedFuture(client));
+        } else {
+            unknownKeys.as(CaffeineCache.class).put(hash, CompletableFuture.completedFuture(Boolean.TRUE));
+        }
+        return client;
+    }
+
+    /**
+     * Nouvelle clé aléatoire (256 bits): seule l'empreinte et le préfixe sont à enregistrer
+     */
+    public IssuedKey issueKey() {
+        byte[] prefixBytes = new byte[4];
+        byte[] secret = new byte[32];
+        random.nextBytes(prefixBytes);
+        random.nextBytes(secret);
+
+        String prefix = KEY_PREFIX + HexFormat.of().formatHex(prefixBytes);
+        String apiKey = prefix + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+        return new IssuedKey(apiKey, hash(apiKey), prefix);
+    }
+
+    /**
+     * Clé créée: apiKey n'est communiquée qu'une fois, au client
+     */
+    public record IssuedKey(String apiKey, String apiKeyHash, String keyPrefix) {
+    }
+
+    /**
+     * Retire une clé des deux caches (création, révocation, désactivation ou changement d'expiration)
+     *
+     * Dans une transaction, le retrait est répété après sa fin, comme pour EntrepriseDirectory.
+     *
+     * @param hash L'empreinte de la clé (ApiClient.apiKeyHash)
+     */
+    public void invalidate(String hash) {
+        if (hash == null) {
+            return;
+        }
+        if (transactions.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            transactions.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    evict(hash);
+                }
+            });
+        }
+        evict(hash);
+    }
+
+    private void evict(String hash) {
+        cache.invalidate(hash).await().indefinitely();
+        unknownKeys.invalidate(hash).await().indefinitely();
+    }
+
+    private ApiClientIdentity load(String hash) {
+        ApiClient client = repository.findValidClient(hash, LocalDateTime.now());
+        if (client == null) {
+            return null;
+        }
+
+        // Les factures d'un client API sont rattachées à son entreprise (le NIF n'est pas unique)
+        Entreprise entreprise = client.entrepriseId != null ? Entreprise.findById(client.entrepriseId) : null;
+        if (entreprise == null) {
+            LOG.warning("Clé API " + client.id + " sans entreprise rattachée (entreprise_id " + client.entrepriseId + ")");
+            return null;
+        }
+
+        long expiresAt = client.expiresAt != null
+                ? client.expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : Long.MAX_VALUE;
+        return new ApiClientIdentity(client.id, client.companyName, entreprise.nif, entreprise.email, expiresAt);
+    }
+
+    /**
+     * Empreinte SHA-256 d'une clé, en hexadécimal (ApiClient.apiKeyHash)
+     */
+    public static String hash(String apiKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(apiKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -0,0 +1,246 @@
+package org.middleware.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Lecture en flux d'un fichier CSV de factures (colonnes du modèle d'import Excel, A à W)
+ *
+ * La première ligne est l'en-tête, ignorée comme dans le classeur. Le séparateur
+ * (point-virgule, virgule ou tabulation) est déduit des premières lignes; les champs
+ * entre guillemets peuvent contenir séparateurs, guillemets doublés et retours à la ligne.
+ * Les montants au format local (1.234,56 ou 1 234,56) sont convertis en notation
+ * décimale simple. Le fichier est lu par blocs avec une mémoire constante, une ligne à la fois.
+ */
+@ApplicationScoped
+public class CsvRowReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Lignes examinées pour déduire le séparateur
+    private static final int DELIMITER_SAMPLE_LINES = 20;
+
+    private static final char[] DELIMITERS = {';', ',', '\t'};
+
+    /**
+     * Lit les lignes de données (l'en-tête et les lignes vides sont ignorés)
+     *
+     * @param file Le fichier CSV, encodé en UTF-8
+     * @param consumer Appelé pour chaque ligne, dans l'ordre du fichier
+     */
+    public void read(File file, Consumer<InvoiceRow> consumer) throws IOException {
+        try (Reader reader = new InputStreamReader(Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            RecordParser parser = new RecordParser(reader);
+            String[] values = new String[InvoiceRow.COLUMNS];
+
+            // En-tête
+            if (parser.next(values) < 0) {
+                return;
+            }
+
+            int line;
+            while ((line = parser.next(values)) >= 0) {
+                InvoiceRow row = new InvoiceRow(line, values.clone());
+                if (!row.isBlank()) {
+                    consumer.accept(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Convertit un montant au format local en notation décimale simple
+     *
+     * Les espaces sont des séparateurs de milliers. Quand virgule et point sont présents,
+     * le dernier est le séparateur décimal; une virgule seule est décimale, plusieurs
+     * virgules ou plusieurs points sont des séparateurs de milliers. Une valeur qui reste
+     * non numérique est rendue telle quelle et rejetée à la validation.
+     */
+    static String localDecimal(String value) {
+        String compact = value.replace(" ", "").replace("\u00A0", "").replace("\u202F", "");
+        int lastComma = compact.lastIndexOf(',');
+        int lastDot = compact.lastIndexOf('.');
+
+        String plain;
+        if (lastComma >= 0 && lastDot >= 0) {
+            plain = lastComma > lastDot
+                    ? compact.replace(".", "").replace(',', '.')
+                    : compact.replace(",", "");
+        } else if (lastComma >= 0) {
+            plain = compact.indexOf(',') == lastComma ? compact.replace(',', '.') : compact.replace(",", "");
+        } else if (lastDot >= 0 && compact.indexOf('.') != lastDot) {
+            plain = compact.replace(".", "");
+        } else {
+            plain = compact;
+        }
+
+        try {
+            return new BigDecimal(plain).toPlainString();
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    /**
+     * Découpe le flux en enregistrements (RFC 4180)
+     */
+    private static final class RecordParser {
+
+        private final Reader in;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private final StringBuilder field = new StringBuilder();
+        private int position;
+        private int length;
+        private int line = 1;
+        private char delimiter;
+
+        RecordParser(Reader in) throws IOException {
+            this.in = in;
+            fill();
+            // Marque d'ordre des octets ajoutée par certains exports
+            if (length > 0 && buffer[0] == '\uFEFF') {
+                position = 1;
+            }
+            delimiter = detectDelimiter();
+        }
+
+        /**
+         * Lit l'enregistrement suivant dans values
+         *
+         * @return Le numéro de la ligne où commence l'enregistrement, -1 en fin de fichier
+         */
+        int next(String[] values) throws IOException {
+            int c = read();
+            if (c < 0) {
+                return -1;
+            }
+
+            Arrays.fill(values, null);
+            int recordLine = line;
+            int column = 0;
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            field.setLength(0);
+
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IOException("Guillemet non fermé dans l'enregistrement de la ligne " + recordLine);
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c == '"') {
+                            field.append('"');
+                            c = read();
+                        } else {
+                            quoted = false;
+                        }
+                        continue;
+                    }
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == delimiter) {
+                    store(values, column++);
+                    wasQuoted = false;
+                } else if (c == '\n' || c < 0) {
+                    store(values, column);
+                    line++;
+                    return recordLine;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private void store(String[] values, int column) {
+            if (column < values.length) {
+                String value = InvoiceRow.normalize(field.toString());
+                if (value != null && InvoiceRow.NUMERIC_COLUMNS.contains(column)) {
+                    value = localDecimal(value);
+                }
+                values[column] = value;
+            }
+            field.setLength(0);
+        }
+
+        /**
+         * Séparateur des premières lignes (hors guillemets): celui qui apparaît le même
+         * nombre de fois, non nul, sur le plus de lignes; à égalité, le plus fréquent dans l'en-tête
+         */
+        private char detectDelimiter() {
+            int[][] counts = new int[DELIMITERS.length][DELIMITER_SAMPLE_LINES];
+            int lines = 0;
+            boolean quoted = false;
+            for (int i = position; i < length && lines < DELIMITER_SAMPLE_LINES; i++) {
+                char c = buffer[i];
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && c == '\n') {
+                    lines++;
+                } else if (!quoted) {
+                    for (int d = 0; d < DELIMITERS.length; d++) {
+                        if (c == DELIMITERS[d]) {
+                            counts[d][lines]++;
+                        }
+                    }
+                }
+            }
+            // Dernière ligne sans retour à la ligne final
+            if (lines < DELIMITER_SAMPLE_LINES) {
+                lines++;
+            }
+
+            char best = DELIMITERS[0];
+            int bestLines = -1;
+            int bestHeader = -1;
+            for (int d = 0; d < DELIMITERS.length; d++) {
+                int header = counts[d][0];
+                int consistent = 0;
+                for (int l = 0; l < lines && header > 0; l++) {
+                    if (counts[d][l] == header) {
+                        consistent++;
+                    }
+                }
+                if (consistent > bestLines || (consistent == bestLines && header > bestHeader)) {
+                    best = DELIMITERS[d];
+                    bestLines = consistent;
+                    bestHeader = header;
+                }
+            }
+            return best;
+        }
+
+        private int read() throws IOException {
+            if (position >= length) {
+                if (length < 0) {
+                    return -1;
+                }
+                fill();
+                if (length <= 0) {
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        private void fill() throws IOException {
+            length = in.read(buffer, 0, buffer.length);
+            position = 0;
+        }
+    }
+}
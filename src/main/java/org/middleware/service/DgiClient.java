@@ -0,0 +1,215 @@
+package org.middleware.service;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.faulttolerance.CircuitBreaker;
+import org.eclipse.microprofile.faulttolerance.Retry;
+import org.eclipse.microprofile.faulttolerance.exceptions.CircuitBreakerOpenException;
+
+import io.smallrye.faulttolerance.api.AsynchronousNonBlocking;
+import io.smallrye.faulttolerance.api.CircuitBreakerName;
+import io.smallrye.faulttolerance.api.ExponentialBackoff;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Client HTTP partagé vers l'API facture de la DGI
+ *
+ * Un seul HttpClient est construit au démarrage à partir de application.properties
+ * afin de réutiliser les connexions (HTTP/2 multiplexé ou keep-alive HTTP/1.1)
+ * pour toutes les entreprises. La durée de conservation des connexions inactives
+ * (jdk.httpclient.keepalive.timeout) est une propriété système du JDK, lue une seule
+ * fois pour tout le processus: elle est fixée au lancement (src/main/docker), pas ici.
+ *
+ * Chaque envoi, y compris chaque nouvelle tentative, prend un jeton du limiteur de
+ * débit de l'entreprise: les reprises ne dépassent pas le débit configuré.
+ *
+ * Chaque point d'accès est protégé par un disjoncteur: pendant une panne de la DGI,
+ * les appels échouent immédiatement (CircuitBreakerOpenException) au lieu d'occuper
+ * les threads; une sonde est laissée passer après le délai d'ouverture. Seules les
+ * erreurs 5xx et d'entrée/sortie comptent: un refus 429 (DgiThrottledException) ne
+ * concerne que l'entreprise appelante et n'ouvre pas le disjoncteur commun.
+ */
+@ApplicationScoped
+public class DgiClient {
+
+    private static final Logger LOG = Logger.getLogger(DgiClient.class.getName());
+
+    // Un disjoncteur par point d'accès DGI
+    public static final String SUBMIT_BREAKER = "dgi-submit";
+    public static final String CONFIRM_BREAKER = "dgi-confirm";
+
+    @ConfigProperty(name = "dgi.api.environment", defaultValue = "test")
+    String environment;
+
+    @ConfigProperty(name = "dgi.api.invoice.test", defaultValue = "https://developper.dgirdc.cd/edef/api/invoice")
+    String invoiceTestUrl;
+
+    @ConfigProperty(name = "dgi.api.invoice.prod", defaultValue = "https://edef.dgirdc.cd/api/invoice")
+    String invoiceProdUrl;
+
+    @ConfigProperty(name = "dgi.http.connect-timeout", defaultValue = "PT10S")
+    Duration connectTimeout;
+
+    @ConfigProperty(name = "dgi.http.request-timeout", defaultValue = "PT30S")
+    Duration requestTimeout;
+
+    @ConfigProperty(name = "dgi.http.version", defaultValue = "HTTP_2")
+    HttpClient.Version httpVersion;
+
+    // default (pool interne du JDK), fixed (pool dédié) ou virtual (threads virtuels)
+    @ConfigProperty(name = "dgi.http.executor", defaultValue = "fixed")
+    String executorType;
+
+    @ConfigProperty(name = "dgi.http.executor-threads", defaultValue = "8")
+    int executorThreads;
+
+    @Inject
+    DgiRateLimiter rateLimiter;
+
+    private String invoiceUrl;
+    private ExecutorService executor;
+    private HttpClient client;
+
+    @PostConstruct
+    void init() {
+        invoiceUrl = "prod".equalsIgnoreCase(environment) ? invoiceProdUrl : invoiceTestUrl;
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(httpVersion)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+
+        executor = createExecutor();
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        client = builder.build();
+
+        LOG.info("Client DGI initialisé - environnement: " + environment + ", URL: " + invoiceUrl
+                + ", version: " + httpVersion + ", exécuteur: " + executorType);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * POST de la facture (PHASE 1)
+     *
+     * @param rateLimitKey Clé de l'entreprise pour le limiteur de débit (NIF)
+     * 
+     * Seuls les échecs de connexion sont retentés: après un timeout de réponse, la DGI
+     * a pu enregistrer la facture et un nouvel envoi créerait un doublon.
+     */
+    @AsynchronousNonBlocking
+    @CircuitBreaker(requestVolumeThreshold = 20, failureRatio = 0.5, delay = 30, delayUnit = ChronoUnit.SECONDS, successThreshold = 2,
+            skipOn = {DgiRateLimitExceededException.class, DgiThrottledException.class})
+    @CircuitBreakerName(SUBMIT_BREAKER)
+    @Retry(maxRetries = 2, delay = 500, jitter = 250,
+            retryOn = {ConnectException.class, HttpConnectTimeoutException.class},
+            abortOn = {CircuitBreakerOpenException.class, DgiRateLimitExceededException.class, DgiThrottledException.class})
+    @ExponentialBackoff(factor = 2, maxDelay = 10, maxDelayUnit = ChronoUnit.SECONDS)
+    public CompletionStage<HttpResponse<String>> submitInvoice(String rateLimitKey, String jsonPayload, String dgiToken) {
+        HttpRequest request = request(URI.create(invoiceUrl), dgiToken)
+                .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
+                .build();
+        return rateLimiter.acquire(rateLimitKey).thenCompose(permit -> send(request));
+    }
+
+    /**
+     * PUT de confirmation de la facture (PHASE 2), idempotent sur l'UID
+     *
+     * @param rateLimitKey Clé de l'entreprise pour le limiteur de débit (NIF)
+     */
+    @AsynchronousNonBlocking
+    @CircuitBreaker(requestVolumeThreshold = 20, failureRatio = 0.5, delay = 30, delayUnit = ChronoUnit.SECONDS, successThreshold = 2,
+            skipOn = {DgiRateLimitExceededException.class, DgiThrottledException.class})
+    @CircuitBreakerName(CONFIRM_BREAKER)
+    @Retry(maxRetries = 3, delay = 500, jitter = 250,
+            retryOn = IOException.class,
+            abortOn = {CircuitBreakerOpenException.class, DgiRateLimitExceededException.class, DgiThrottledException.class})
+    @ExponentialBackoff(factor = 2, maxDelay = 10, maxDelayUnit = ChronoUnit.SECONDS)
+    public CompletionStage<HttpResponse<String>> confirmInvoice(String rateLimitKey, String uid, String jsonPayload,
+                                                                String dgiToken) {
+        String confirmUrl = invoiceUrl + "/" + uid + "/confirm";
+        LOG.info("URL de confirmation: " + confirmUrl);
+
+        HttpRequest request = request(URI.create(confirmUrl), dgiToken)
+                .PUT(HttpRequest.BodyPublishers.ofString(jsonPayload))
+                .build();
+        return rateLimiter.acquire(rateLimitKey).thenCompose(permit -> send(request));
+    }
+
+    private HttpRequest.Builder request(URI uri, String dgiToken) {
+        return HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + dgiToken);
+    }
+
+    /**
+     * Envoie la requête; les réponses 5xx sont converties en échec pour être prises
+     * en compte par le disjoncteur et les nouvelles tentatives, les réponses 429 en
+     * DgiThrottledException, ignorée par le disjoncteur et non retentée
+     */
+    private CompletionStage<HttpResponse<String>> send(HttpRequest request) {
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            } else if (response.statusCode() == 429) {
+                result.completeExceptionally(new DgiThrottledException(
+                        "Débit DGI dépassé: HTTP 429 sur " + request.uri()));
+            } else if (response.statusCode() >= 500) {
+                result.completeExceptionally(new DgiUnavailableException(
+                        "DGI indisponible: HTTP " + response.statusCode() + " sur " + request.uri(),
+                        response.statusCode()));
+            } else {
+                result.complete(response);
+            }
+        });
+        return result;
+    }
+
+    private ExecutorService createExecutor() {
+        switch (executorType.toLowerCase()) {
+            case "virtual":
+                return Executors.newVirtualThreadPerTaskExecutor();
+            case "default":
+                return null;
+            default:
+                AtomicInteger counter = new AtomicInteger();
+                return Executors.newFixedThreadPool(executorThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "dgi-http-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+    }
+}
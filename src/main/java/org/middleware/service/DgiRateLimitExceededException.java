@@ -0,0 +1,15 @@
+package org.middleware.service;
+
+/**
+ * Appel DGI refusé localement: la file d'attente du limiteur de débit de l'entreprise
+ * dépasse le délai maximal (dgi.rate-limit.max-wait)
+ *
+ * Rien n'a été envoyé à la DGI; l'appel est différé comme pendant une indisponibilité.
+ * Ignoré par le disjoncteur de DgiClient (aucune panne de la DGI).
+ */
+public class DgiRateLimitExceededException extends RuntimeException {
+
+    public DgiRateLimitExceededException(String message) {
+        super(message);
+    }
+}
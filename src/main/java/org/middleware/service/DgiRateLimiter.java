@@ -0,0 +1,187 @@
+package org.middleware.service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Limiteur de débit des appels DGI, un seau à jetons par entreprise (NIF)
+ *
+ * Quand les jetons sont épuisés, l'appel est mis en file et différé jusqu'à la
+ * disponibilité de son jeton, sans bloquer de thread. L'attente est plafonnée par
+ * 'max-wait': au-delà, l'appel est refusé (DgiRateLimitExceededException) et sa
+ * réservation annulée. Les seaux revenus pleins (entreprise inactive) sont retirés.
+ */
+@ApplicationScoped
+public class DgiRateLimiter {
+
+    @ConfigProperty(name = "dgi.rate-limit.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "dgi.rate-limit.permits-per-second", defaultValue = "5")
+    double permitsPerSecond;
+
+    @ConfigProperty(name = "dgi.rate-limit.burst", defaultValue = "10")
+    int burst;
+
+    @ConfigProperty(name = "dgi.rate-limit.max-wait", defaultValue = "PT30S")
+    Duration maxWait;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    // Libère les appels différés (un thread, les appels DGI eux-mêmes sont asynchrones)
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dgi-rate-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Réserve un jeton pour l'entreprise
+     *
+     * @param key Clé de l'entreprise (NIF)
+     * @return Une étape terminée quand l'appel peut être envoyé, ou en échec
+     *         (DgiRateLimitExceededException) si l'attente dépasserait max-wait
+     */
+    public CompletionStage<Void> acquire(String key) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Réservation dans compute: un seau ne peut pas être retiré pendant qu'il est utilisé
+        long limitNanos = maxWait.toNanos();
+        long[] waitNanos = new long[1];
+        buckets.compute(key, (k, bucket) -> {
+            TokenBucket current = bucket != null ? bucket : new TokenBucket(permitsPerSecond, burst);
+            waitNanos[0] = current.reserve(limitNanos);
+            return current;
+        });
+
+        if (waitNanos[0] < 0) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new DgiRateLimitExceededException(
+                    "Trop d'appels DGI en attente pour " + key + " (attente supérieure à " + maxWait + ")"));
+        }
+        return delay(waitNanos[0]);
+    }
+
+    private CompletionStage<Void> delay(long waitNanos) {
+        acquired.incrementAndGet();
+        if (waitNanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        delayed.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        scheduler.schedule(() -> permit.complete(null), waitNanos, TimeUnit.NANOSECONDS);
+        return permit;
+    }
+
+    /**
+     * Retire les seaux pleins: l'entreprise n'a fait aucun appel depuis le remplissage
+     */
+    @Scheduled(every = "1m", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void evictIdle() {
+        for (String key : buckets.keySet()) {
+            buckets.computeIfPresent(key, (k, bucket) -> bucket.isFull() ? null : bucket);
+        }
+    }
+
+    /**
+     * Compteurs exposés par /api/dgi/metrics
+     */
+    public Map<String, Object> getMetrics() {
+        long count = acquired.get();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("permitsPerSecond", permitsPerSecond);
+        metrics.put("burst", burst);
+        metrics.put("entreprises", buckets.size());
+        metrics.put("acquired", count);
+        metrics.put("delayed", delayed.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("maxWaitConfiguredMs", maxWait.toMillis());
+        metrics.put("totalWaitMs", TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()));
+        metrics.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        metrics.put("averageWaitMs", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count));
+        return metrics;
+    }
+
+    /**
+     * Seau à jetons avec réservation: le solde peut devenir négatif, ce qui
+     * représente les appels déjà en file. Le délai retourné respecte l'ordre d'arrivée.
+     * Le solde est borné par le délai maximal: une réservation qui l'excéderait est refusée.
+     */
+    static final class TokenBucket {
+
+        private final double permitsPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double permitsPerSecond, int burst) {
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, burst);
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * @return Le délai avant l'envoi en nanosecondes, ou -1 si ce délai dépasserait maxWaitNanos
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            refill();
+            double remaining = tokens - 1;
+            long waitNanos = remaining >= 0 ? 0 : (long) (-remaining / permitsPerNano);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            tokens = remaining;
+            return waitNanos;
+        }
+
+        synchronized boolean isFull() {
+            refill();
+            return tokens >= capacity;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+        }
+    }
+}
@@ -1,23 +1,25 @@
 package org.middleware.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.enterprise.context.ApplicationScoped;
-import org.eclipse.microprofile.faulttolerance.Retry;
-import org.middleware.dto.DgiResponse;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.faulttolerance.exceptions.CircuitBreakerOpenException;
 import org.middleware.models.InvoiceEntity;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpResponse;
-import java.time.Duration;
-import java.time.temporal.ChronoUnit;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,10 +27,10 @@ import java.util.logging.Logger;
 public class DgiService {
 
     private static final Logger LOG = Logger.getLogger(DgiService.class.getName());
-    private static final String DGI_API_BASE_URL = "https://developper.dgirdc.cd/edef/api/invoice";
-    private static final int DGI_TIMEOUT_SECONDS = 30;
 
-    private final HttpClient client = HttpClient.newHttpClient();
+    @Inject
+    DgiClient dgiClient;
+
     private final ObjectMapper mapper = new ObjectMapper();
 
     public DgiService() {
@@ -37,256 +39,273 @@ public class DgiService {
     }
 
     /**
-     * Soumet une facture à la DGI (ÉTAPE 1)
-     * Mise à jour et sauvegarde l'InvoiceEntity avec le statut et les données
+     * ÉTAPE 1 non bloquante, sans persistance
      * 
-     * @param invoice La facture à soumettre
-     * @param dgiToken Le token d'authentification DGI
-     * @return InvoiceEntity mise à jour avec:
-     *         - status = "PHASE1" en succès
-     *         - status = "PENDING" + errorCode/errorDesc en cas d'erreur
-     *         - uid, total, curTotal, vtotal si succès
+     * La facture doit avoir été réservée (SUBMITTING) par InvoiceEntity.claimForSubmission:
+     * passer par InvoiceBatchSubmitter, qui applique le budget de tentatives et empêche
+     * deux soumissions concurrentes. Si la requête a pu atteindre la DGI sans réponse
+     * exploitable, la facture passe en SUBMIT_UNKNOWN et n'est plus resoumise
+     * automatiquement, pour ne pas créer de doublon.
      */
-    @Retry(maxRetries = 3, delay = 2, delayUnit = ChronoUnit.SECONDS)
-    public InvoiceEntity submitInvoicePhase1(InvoiceEntity invoice, String dgiToken) {
-        try {
-            LOG.info("=== PHASE 1: Soumission de la facture RN=" + invoice.rn + " ===");
-            
-            // Vérification que la facture n'est pas déjà soumise
-            if ("PHASE1".equals(invoice.status) || "CONFIRMED".equals(invoice.status)) {
-                LOG.warning("Facture déjà soumise: " + invoice.rn + " (Statut: " + invoice.status + ")");
-                invoice.errorCode = "INVOICE_ALREADY_SUBMITTED";
-                invoice.errorDesc = "Cette facture a déjà été soumise à la DGI";
-                invoice.persist();
-                return invoice;
-            }
-            
-            // Étape 1: Soumission de la facture
-            JsonNode submissionResponse = submitInvoiceToDgi(invoice, dgiToken);
-            
-            if (hasError(submissionResponse)) {
-                LOG.warning("Erreur lors de la soumission Phase 1: " + submissionResponse.toString());
-                invoice.errorCode = extractField(submissionResponse, "errorCode");
-                invoice.errorDesc = extractField(submissionResponse, "errorDesc");
-                invoice.persist();
-                return invoice;
-            }
-            
-            // Extraction et mise à jour des données de soumission
-            invoice.uid = extractField(submissionResponse, "uid");
-            invoice.total = extractBigDecimal(submissionResponse, "total");
-            invoice.curTotal = extractBigDecimal(submissionResponse, "curTotal");
-            invoice.vtotal = extractBigDecimal(submissionResponse, "vtotal");
-            invoice.status = "PHASE1";
-            invoice.errorCode = null;
-            invoice.errorDesc = null;
-            
-            // Sauvegarde de l'entité
-            invoice.persist();
-            
-            LOG.info("✓ PHASE 1 complétée avec succès - UID: " + invoice.uid);
-            
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Exception PHASE 1: " + e.getMessage(), e);
-            invoice.status = "PENDING";
-            invoice.errorCode = "DGI_PHASE1_ERROR";
-            invoice.errorDesc = "Erreur lors de la soumission: " + e.getMessage();
-            invoice.persist();
+    public CompletionStage<InvoiceEntity> submitInvoicePhase1Async(InvoiceEntity invoice, String dgiToken) {
+        LOG.info("=== PHASE 1: Soumission de la facture RN=" + invoice.rn + " ===");
+
+        // Vérification que la facture n'est pas déjà soumise
+        if ("PHASE1".equals(invoice.status) || "CONFIRMED".equals(invoice.status)) {
+            LOG.warning("Facture déjà soumise: " + invoice.rn + " (Statut: " + invoice.status + ")");
+            invoice.errorCode = "INVOICE_ALREADY_SUBMITTED";
+            invoice.errorDesc = "Cette facture a déjà été soumise à la DGI";
+            return CompletableFuture.completedFuture(invoice);
         }
-        
-        return invoice;
+
+        if ("SUBMIT_UNKNOWN".equals(invoice.status)) {
+            LOG.warning("Issue de la soumission inconnue, pas de nouvel envoi: " + invoice.rn);
+            return CompletableFuture.completedFuture(invoice);
+        }
+
+        // Étape 1: Soumission de la facture
+        return submitInvoiceToDgi(invoice, dgiToken)
+                .thenApply(submissionResponse -> applySubmissionResponse(invoice, submissionResponse))
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    if (mayHaveReachedDgi(cause)) {
+                        LOG.log(Level.SEVERE, "PHASE 1 sans réponse exploitable pour " + invoice.rn
+                                + ", resoumission bloquée: " + cause.getMessage(), cause);
+                        invoice.status = "SUBMIT_UNKNOWN";
+                        invoice.errorCode = "DGI_PHASE1_AMBIGUOUS";
+                        invoice.errorDesc = "La DGI a peut-être enregistré la facture (" + cause.getMessage()
+                                + "). Vérification requise avant toute nouvelle soumission";
+                        return invoice;
+                    }
+                    invoice.status = "PENDING";
+                    if (cause instanceof DgiThrottledException) {
+                        LOG.warning("PHASE 1 reportée, débit DGI dépassé pour " + invoice.nif + ": " + cause.getMessage());
+                        invoice.errorCode = "DGI_THROTTLED";
+                        invoice.errorDesc = "Débit DGI dépassé, soumission reportée: " + cause.getMessage();
+                        return invoice;
+                    }
+                    if (isUnavailable(cause)) {
+                        LOG.warning("PHASE 1 reportée, DGI indisponible: " + cause.getMessage());
+                        invoice.errorCode = "DGI_UNAVAILABLE";
+                        invoice.errorDesc = "DGI indisponible, soumission reportée: " + cause.getMessage();
+                        return invoice;
+                    }
+                    LOG.log(Level.SEVERE, "Exception PHASE 1: " + cause.getMessage(), cause);
+                    invoice.errorCode = "DGI_PHASE1_ERROR";
+                    invoice.errorDesc = "Erreur lors de la soumission: " + cause.getMessage();
+                    return invoice;
+                });
     }
 
     /**
-     * Confirme la soumission d'une facture à la DGI (ÉTAPE 2)
-     * Mise à jour et sauvegarde l'InvoiceEntity avec les données de confirmation
-     * 
-     * @param invoice La facture à confirmer (doit avoir un UID de PHASE 1)
-     * @param dgiToken Le token d'authentification DGI
-     * @return InvoiceEntity mise à jour avec:
-     *         - status = "CONFIRMED" en succès
-     *         - status = "PHASE1" + errorCode/errorDesc en cas d'erreur
-     *         - qrCode, dateTime, codeDEFDGI, nim si succès
+     * ÉTAPE 2 non bloquante, sans persistance
      */
-    @Retry(maxRetries = 3, delay = 2, delayUnit = ChronoUnit.SECONDS)
-    public InvoiceEntity confirmInvoicePhase2(InvoiceEntity invoice, String dgiToken) {
-        try {
-            LOG.info("=== PHASE 2: Confirmation de la facture UID=" + invoice.uid + " ===");
-            
-            // Vérification que la facture est en Phase 1
-            if (!"PHASE1".equals(invoice.status)) {
-                LOG.warning("Facture non prête pour confirmation: " + invoice.rn + " (Statut: " + invoice.status + ")");
-                invoice.errorCode = "INVALID_INVOICE_STATUS";
-                invoice.errorDesc = "La facture doit être en statut PHASE1 pour être confirmée";
-                invoice.persist();
-                return invoice;
-            }
-            
-            // Vérification que l'UID existe
-            if (invoice.uid == null || invoice.uid.isEmpty()) {
-                LOG.warning("UID manquant pour la confirmation");
-                invoice.errorCode = "MISSING_UID";
-                invoice.errorDesc = "L'UID de soumission est manquant. Veuillez compléter PHASE 1";
-                invoice.persist();
-                return invoice;
-            }
-            
-            // Étape 2: Confirmation
-            JsonNode confirmationResponse = confirmInvoiceWithDgi(invoice, dgiToken);
-            
-            if (hasError(confirmationResponse)) {
-                LOG.warning("Erreur lors de la confirmation Phase 2: " + confirmationResponse.toString());
-                invoice.errorCode = extractField(confirmationResponse, "errorCode");
-                invoice.errorDesc = extractField(confirmationResponse, "errorDesc");
-                // Reste en PHASE1 en cas d'erreur confirmation
-                invoice.status = "PHASE1";
-                invoice.persist();
-                return invoice;
-            }
-            
-            // Extraction et mise à jour des données de confirmation
-            invoice.qrCode = extractField(confirmationResponse, "qrCode");
-            invoice.dateTime = extractField(confirmationResponse, "dateTime");
-            invoice.codeDEFDGI = extractField(confirmationResponse, "codeDEFDGI");
-            invoice.counters = extractField(confirmationResponse, "counters");
-            invoice.nim = extractField(confirmationResponse, "nim");
-            invoice.status = "CONFIRMED";
-            invoice.errorCode = null;
-            invoice.errorDesc = null;
-            
-            // Sauvegarde de l'entité
-            invoice.persist();
-            
-            LOG.info("✓ PHASE 2 complétée avec succès - QR Code: " + invoice.qrCode);
-            
-        } catch (Exception e) {
-            LOG.log(Level.SEVERE, "Exception PHASE 2: " + e.getMessage(), e);
-            invoice.status = "PHASE1";
-            invoice.errorCode = "DGI_PHASE2_ERROR";
-            invoice.errorDesc = "Erreur lors de la confirmation: " + e.getMessage();
-            invoice.persist();
+    public CompletionStage<InvoiceEntity> confirmInvoicePhase2Async(InvoiceEntity invoice, String dgiToken) {
+        LOG.info("=== PHASE 2: Confirmation de la facture UID=" + invoice.uid + " ===");
+
+        // Vérification que la facture est en Phase 1
+        if (!"PHASE1".equals(invoice.status)) {
+            LOG.warning("Facture non prête pour confirmation: " + invoice.rn + " (Statut: " + invoice.status + ")");
+            invoice.errorCode = "INVALID_INVOICE_STATUS";
+            invoice.errorDesc = "La facture doit être en statut PHASE1 pour être confirmée";
+            return CompletableFuture.completedFuture(invoice);
         }
-        
+
+        // Vérification que l'UID existe
+        if (invoice.uid == null || invoice.uid.isEmpty()) {
+            LOG.warning("UID manquant pour la confirmation");
+            invoice.errorCode = "MISSING_UID";
+            invoice.errorDesc = "L'UID de soumission est manquant. Veuillez compléter PHASE 1";
+            return CompletableFuture.completedFuture(invoice);
+        }
+
+        // Étape 2: Confirmation
+        return confirmInvoiceWithDgi(invoice, dgiToken)
+                .thenApply(confirmationResponse -> applyConfirmationResponse(invoice, confirmationResponse))
+                .exceptionally(e -> {
+                    Throwable cause = unwrap(e);
+                    invoice.status = "PHASE1";
+                    if (cause instanceof DgiThrottledException) {
+                        LOG.warning("PHASE 2 reportée, débit DGI dépassé pour " + invoice.nif + ": " + cause.getMessage());
+                        invoice.errorCode = "DGI_THROTTLED";
+                        invoice.errorDesc = "Débit DGI dépassé, confirmation reportée: " + cause.getMessage();
+                        return invoice;
+                    }
+                    if (isUnavailable(cause)) {
+                        LOG.warning("PHASE 2 reportée, DGI indisponible: " + cause.getMessage());
+                        invoice.errorCode = "DGI_UNAVAILABLE";
+                        invoice.errorDesc = "DGI indisponible, confirmation reportée: " + cause.getMessage();
+                        return invoice;
+                    }
+                    LOG.log(Level.SEVERE, "Exception PHASE 2: " + cause.getMessage(), cause);
+                    invoice.errorCode = "DGI_PHASE2_ERROR";
+                    invoice.errorDesc = "Erreur lors de la confirmation: " + cause.getMessage();
+                    return invoice;
+                });
+    }
+
+    /**
+     * Met à jour la facture avec la réponse de soumission (PHASE 1)
+     */
+    private InvoiceEntity applySubmissionResponse(InvoiceEntity invoice, JsonNode submissionResponse) {
+        if (hasError(submissionResponse)) {
+            LOG.warning("Erreur lors de la soumission Phase 1: " + submissionResponse.toString());
+            invoice.errorCode = extractField(submissionResponse, "errorCode");
+            invoice.errorDesc = extractField(submissionResponse, "errorDesc");
+            // Refus explicite: rien n'a été enregistré côté DGI
+            invoice.status = "PENDING";
+            return invoice;
+        }
+
+        // Extraction et mise à jour des données de soumission
+        invoice.uid = extractField(submissionResponse, "uid");
+        invoice.total = extractBigDecimal(submissionResponse, "total");
+        invoice.curTotal = extractBigDecimal(submissionResponse, "curTotal");
+        invoice.vtotal = extractBigDecimal(submissionResponse, "vtotal");
+        invoice.status = "PHASE1";
+        invoice.errorCode = null;
+        invoice.errorDesc = null;
+
+        LOG.info("✓ PHASE 1 complétée avec succès - UID: " + invoice.uid);
         return invoice;
     }
 
     /**
-     * Soumet automatiquement une facture complètement (PHASE 1 + PHASE 2)
-     * Retourne l'InvoiceEntity mise à jour
-     * 
-     * @param invoice La facture à soumettre
-     * @param dgiToken Le token d'authentification DGI
-     * @return InvoiceEntity mise à jour avec status et erreurs
+     * Met à jour la facture avec la réponse de confirmation (PHASE 2)
      */
-    @Retry(maxRetries = 2, delay = 2, delayUnit = ChronoUnit.SECONDS)
-    public InvoiceEntity submitInvoice(InvoiceEntity invoice, String dgiToken) {
-        LOG.info("=== Soumission complète de la facture (PHASE 1 + PHASE 2) ===");
-        
-        // PHASE 1: Soumission
-        invoice = submitInvoicePhase1(invoice, dgiToken);
-        
-        // Si Phase 1 échoue, retourner l'entité avec l'erreur
-        if (!("PHASE1".equals(invoice.status))) {
+    private InvoiceEntity applyConfirmationResponse(InvoiceEntity invoice, JsonNode confirmationResponse) {
+        if (hasError(confirmationResponse)) {
+            LOG.warning("Erreur lors de la confirmation Phase 2: " + confirmationResponse.toString());
+            invoice.errorCode = extractField(confirmationResponse, "errorCode");
+            invoice.errorDesc = extractField(confirmationResponse, "errorDesc");
+            // Reste en PHASE1 en cas d'erreur confirmation
+            invoice.status = "PHASE1";
             return invoice;
         }
-        
-        // PHASE 2: Confirmation
-        return confirmInvoicePhase2(invoice, dgiToken);
+
+        // Extraction et mise à jour des données de confirmation
+        invoice.qrCode = extractField(confirmationResponse, "qrCode");
+        invoice.dateTime = extractField(confirmationResponse, "dateTime");
+        invoice.codeDEFDGI = extractField(confirmationResponse, "codeDEFDGI");
+        invoice.counters = extractField(confirmationResponse, "counters");
+        invoice.nim = extractField(confirmationResponse, "nim");
+        invoice.status = "CONFIRMED";
+        invoice.errorCode = null;
+        invoice.errorDesc = null;
+
+        LOG.info("✓ PHASE 2 complétée avec succès - QR Code: " + invoice.qrCode);
+        return invoice;
     }
 
     /**
      * Effectue la requête HTTP de soumission à la DGI
      */
-    private JsonNode submitInvoiceToDgi(InvoiceEntity invoice, String dgiToken) 
-            throws IOException, InterruptedException {
-        String jsonPayload = mapper.writeValueAsString(invoice);
+    private CompletionStage<JsonNode> submitInvoiceToDgi(InvoiceEntity invoice, String dgiToken) {
+        String jsonPayload;
+        try {
+            jsonPayload = mapper.writeValueAsString(invoice);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
         
         LOG.fine("Payload soumission: " + jsonPayload.substring(0, Math.min(100, jsonPayload.length())) + "...");
         
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(DGI_API_BASE_URL))
-                .timeout(Duration.ofSeconds(DGI_TIMEOUT_SECONDS))
-                .header("Accept", "application/json")
-                .header("Content-Type", "application/json")
-                .header("Authorization", "Bearer " + dgiToken)
-                .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
-                .build();
-
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        
-        LOG.info("[PHASE 1 Response] HTTP " + response.statusCode());
-        LOG.fine("Response body: " + response.body());
-
-        return mapper.readTree(response.body());
+        return dgiClient.submitInvoice(rateLimitKey(invoice), jsonPayload, dgiToken)
+                .thenApply(response -> readResponse(response, "PHASE 1"));
     }
 
     /**
      * Effectue la requête HTTP de confirmation à la DGI
      */
-    private JsonNode confirmInvoiceWithDgi(InvoiceEntity invoice, String dgiToken) 
-            throws IOException, InterruptedException {
+    private CompletionStage<JsonNode> confirmInvoiceWithDgi(InvoiceEntity invoice, String dgiToken) {
         
         Map<String, Object> confirmData = Map.of(
                 "total", invoice.total != null ? invoice.total : BigDecimal.ZERO,
                 "vtotal", invoice.vtotal != null ? invoice.vtotal : BigDecimal.ZERO
         );
 
-        String jsonPayload = mapper.writeValueAsString(confirmData);
+        String jsonPayload;
+        try {
+            jsonPayload = mapper.writeValueAsString(confirmData);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
         
         LOG.fine("Payload confirmation: " + jsonPayload);
         
-        String confirmUrl = DGI_API_BASE_URL + "/" + invoice.uid + "/confirm";
-        LOG.info("URL de confirmation: " + confirmUrl);
-        
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(confirmUrl))
-                .timeout(Duration.ofSeconds(DGI_TIMEOUT_SECONDS))
-                .header("Accept", "application/json")
-                .header("Content-Type", "application/json")
-                .header("Authorization", "Bearer " + dgiToken)
-                .PUT(HttpRequest.BodyPublishers.ofString(jsonPayload))
-                .build();
-
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        
-        LOG.info("[PHASE 2 Response] HTTP " + response.statusCode());
+        return dgiClient.confirmInvoice(rateLimitKey(invoice), invoice.uid, jsonPayload, dgiToken)
+                .thenApply(response -> readResponse(response, "PHASE 2"));
+    }
+
+    /**
+     * Journalise et parse la réponse HTTP de la DGI
+     */
+    private JsonNode readResponse(HttpResponse<String> response, String phase) {
+        LOG.info("[" + phase + " Response] HTTP " + response.statusCode());
         LOG.fine("Response body: " + response.body());
 
-        return mapper.readTree(response.body());
+        try {
+            return mapper.readTree(response.body());
+        } catch (IOException e) {
+            // Refus HTTP sans corps JSON: traité comme un refus DGI
+            if (response.statusCode() >= 400) {
+                ObjectNode error = mapper.createObjectNode();
+                error.put("errorCode", "HTTP_" + response.statusCode());
+                error.put("errorDesc", "Réponse DGI non JSON: " + response.body());
+                return error;
+            }
+            throw new CompletionException(new IOException(
+                    "Réponse DGI illisible (HTTP " + response.statusCode() + ")", e));
+        }
     }
 
     /**
-     * Vérifie si la réponse contient une erreur DGI
+     * Clé du limiteur de débit: le NIF de l'entreprise émettrice
      */
-    private boolean hasError(JsonNode response) {
-        return response.has("errorCode") || response.has("errorDesc") || 
-               response.has("error");
+    private String rateLimitKey(InvoiceEntity invoice) {
+        return invoice.nif != null ? invoice.nif : String.valueOf(invoice.email);
     }
 
     /**
-     * Traite les erreurs reçues de la DGI
+     * Disjoncteur ouvert, DGI en erreur serveur ou file du limiteur pleine: la soumission doit être différée
      */
-    private DgiResponse handleDgiError(JsonNode errorResponse) {
-        DgiResponse dgiResponse = new DgiResponse();
-        dgiResponse.success = false;
-        dgiResponse.errorCode = extractField(errorResponse, "errorCode");
-        dgiResponse.errorDesc = extractField(errorResponse, "errorDesc");
-        
-        // Fallback si errorDesc n'existe pas
-        if (dgiResponse.errorDesc == null) {
-            dgiResponse.errorDesc = extractField(errorResponse, "error");
+    private boolean isUnavailable(Throwable cause) {
+        return cause instanceof CircuitBreakerOpenException || cause instanceof DgiUnavailableException
+                || cause instanceof DgiRateLimitExceededException;
+    }
+
+    /**
+     * Vrai si la requête de PHASE 1 a pu être reçue par la DGI: seuls les échecs
+     * de connexion, le disjoncteur ouvert, le limiteur de débit, les refus 429/502/503
+     * et les erreurs de sérialisation garantissent que rien n'a été envoyé
+     */
+    private boolean mayHaveReachedDgi(Throwable cause) {
+        if (cause instanceof CircuitBreakerOpenException
+                || cause instanceof DgiRateLimitExceededException
+                || cause instanceof ConnectException
+                || cause instanceof HttpConnectTimeoutException
+                || cause instanceof JsonProcessingException) {
+            return false;
         }
-        
-        // Fallback sur le message d'erreur brut si tout est nul
-        if (dgiResponse.errorCode == null && dgiResponse.errorDesc == null) {
-            dgiResponse.errorCode = "UNKNOWN_ERROR";
-            dgiResponse.errorDesc = "Erreur DGI non identifiée: " + errorResponse.asText();
+        if (cause instanceof DgiUnavailableException unavailable) {
+            return !unavailable.isRejectedBeforeProcessing();
         }
-        
-        LOG.warning("Erreur DGI reçue - Code: " + dgiResponse.errorCode + 
-                    ", Description: " + dgiResponse.errorDesc);
+        return cause instanceof IOException;
+    }
 
-        return dgiResponse;
+    /**
+     * Retire l'enveloppe CompletionException ajoutée par les étapes asynchrones
+     */
+    private Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Vérifie si la réponse contient une erreur DGI
+     */
+    private boolean hasError(JsonNode response) {
+        return response.has("errorCode") || response.has("errorDesc") || 
+               response.has("error");
     }
 
     /**
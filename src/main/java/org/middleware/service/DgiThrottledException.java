@@ -0,0 +1,15 @@
+package org.middleware.service;
+
+/**
+ * Réponse HTTP 429 de la DGI: débit dépassé pour le token de l'entreprise appelante
+ *
+ * Le refus est propre à une entreprise: il est ignoré par les disjoncteurs partagés
+ * de DgiClient, pour qu'une entreprise limitée ne diffère pas les soumissions des
+ * autres. La requête n'a pas été traitée; l'appel est différé par l'outbox.
+ */
+public class DgiThrottledException extends DgiUnavailableException {
+
+    public DgiThrottledException(String message) {
+        super(message, 429);
+    }
+}
@@ -0,0 +1,31 @@
+package org.middleware.service;
+
+import java.io.IOException;
+
+/**
+ * Réponse de la DGI indiquant une indisponibilité temporaire (HTTP 5xx, ou 429 avec
+ * la sous-classe DgiThrottledException)
+ *
+ * Une erreur 5xx est comptée comme un échec par le disjoncteur de DgiClient,
+ * contrairement aux rejets métier qui sont retournés normalement dans le corps JSON.
+ */
+public class DgiUnavailableException extends IOException {
+
+    private final int statusCode;
+
+    public DgiUnavailableException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 429, 502 et 503: la requête a été refusée avant tout traitement par la DGI
+     */
+    public boolean isRejectedBeforeProcessing() {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503;
+    }
+}
@@ -0,0 +1,72 @@
+package org.middleware.service;
+
+import org.middleware.dto.EntrepriseProfile;
+import org.middleware.models.Entreprise;
+
+import io.quarkus.cache.Cache;
+import io.quarkus.cache.CacheName;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Profils des entreprises par email, mis en cache pour éviter une requête par appel
+ *
+ * Le cache (Caffeine, borné et à expiration, voir application.properties) contient
+ * des copies immuables: aucune entité gérée n'est partagée entre requêtes. Toute
+ * modification d'une entreprise doit appeler invalidate.
+ */
+@ApplicationScoped
+public class EntrepriseDirectory {
+
+    public static final String CACHE_NAME = "entreprise-profiles";
+
+    @Inject
+    @CacheName(CACHE_NAME)
+    Cache cache;
+
+    @Inject
+    TransactionSynchronizationRegistry transactions;
+
+    /**
+     * Profil de l'entreprise, ou null si aucune entreprise n'a cet email
+     */
+    public EntrepriseProfile findByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        return cache.get(email, this::load).await().indefinitely();
+    }
+
+    /**
+     * Retire une entreprise du cache
+     *
+     * Dans une transaction, le retrait est répété après sa fin: une requête concurrente
+     * qui aurait relu l'ancienne version avant la validation ne la laisse pas en cache.
+     */
+    public void invalidate(String email) {
+        if (email == null) {
+            return;
+        }
+        if (transactions.getTransactionStatus() == Status.STATUS_ACTIVE) {
+            transactions.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(email).await().indefinitely();
+                }
+            });
+        }
+        cache.invalidate(email).await().indefinitely();
+    }
+
+    private EntrepriseProfile load(String email) {
+        Entreprise entreprise = Entreprise.find("email", email).firstResult();
+        return entreprise != null ? new EntrepriseProfile(entreprise) : null;
+    }
+}
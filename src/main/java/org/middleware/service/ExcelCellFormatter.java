@@ -0,0 +1,58 @@
+package org.middleware.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+/**
+ * Conversion des cellules numériques Excel en texte normalisé
+ *
+ * Dates au format ISO (LocalDateTime) et nombres en notation décimale simple, quel
+ * que soit le format d'affichage de la cellule. La décision date / nombre dépend
+ * uniquement du format de la cellule: elle est calculée une fois par index de format
+ * (DateUtil.isADateFormat analyse le motif) puis mise en cache.
+ *
+ * Les index des formats personnalisés sont propres à chaque classeur: une instance
+ * par lecture de fichier, non partagée entre threads.
+ */
+public class ExcelCellFormatter extends DataFormatter {
+
+    private static final byte UNKNOWN = 0;
+    private static final byte DATE = 1;
+    private static final byte NUMBER = 2;
+
+    // Décision par index de format, agrandi à la demande
+    private byte[] formats = new byte[256];
+
+    @Override
+    public String formatRawCellContents(double value, int formatIndex, String formatString, boolean use1904Windowing) {
+        if (isDateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+            return DateUtil.getLocalDateTime(value, use1904Windowing).toString();
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Vrai si le format est un format de date (résultat mis en cache par index)
+     */
+    public boolean isDateFormat(int formatIndex, String formatString) {
+        if (formatIndex < 0) {
+            return DateUtil.isADateFormat(formatIndex, formatString);
+        }
+        if (formatIndex >= formats.length) {
+            formats = Arrays.copyOf(formats, Math.max(formatIndex + 1, formats.length * 2));
+        }
+
+        byte decision = formats[formatIndex];
+        if (decision == UNKNOWN) {
+            decision = DateUtil.isADateFormat(formatIndex, formatString) ? DATE : NUMBER;
+            formats[formatIndex] = decision;
+        }
+        return decision == DATE;
+    }
+}
@@ -0,0 +1,985 @@
+package org.middleware.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.middleware.dto.EntrepriseProfile;
+import org.middleware.dto.UploadResponse;
+import org.middleware.dto.ValidationReport;
+import org.middleware.models.ImportSession;
+import org.middleware.models.InvoiceEntity;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Import d'un fichier de factures (Excel, CSV ou JSON Lines) et soumission à la DGI
+ *
+ * Exécuté en arrière-plan par InvoiceJobService pour /upload-excel, /upload-file,
+ * /upload-csv et /upload-ndjson, ou de façon synchrone et sans effet (validateFile)
+ * pour leur mode dryRun. Tous les formats produisent des InvoiceRow aux colonnes du
+ * modèle Excel et suivent le même chemin de validation et de soumission.
+ */
+@ApplicationScoped
+public class ExcelImportService {
+
+    private static final Logger LOG = Logger.getLogger(ExcelImportService.class.getName());
+
+    @Inject
+    ExcelTraitement excelTraitement;
+
+    @Inject
+    InvoiceBatchSubmitter batchSubmitter;
+
+    @Inject
+    ExcelStreamReader excelReader;
+
+    @Inject
+    CsvRowReader csvReader;
+
+    @Inject
+    NdjsonRowReader ndjsonReader;
+
+    /**
+     * Format du fichier importé
+     */
+    public enum Format {
+        EXCEL(".xlsx"), CSV(".csv"), NDJSON(".ndjson");
+
+        final String suffix;
+
+        Format(String suffix) {
+            this.suffix = suffix;
+        }
+    }
+
+    // Lecteur en flux d'un format: une InvoiceRow par ligne de données, dans l'ordre du fichier
+    @FunctionalInterface
+    private interface RowSource {
+        void read(File file, Consumer<InvoiceRow> consumer) throws IOException;
+    }
+
+    // Nombre de factures persistées puis soumises ensemble pendant la lecture
+    @ConfigProperty(name = "dgi.import.chunk-size", defaultValue = "500")
+    int chunkSize;
+
+    // Threads de validation et de construction des factures (0 = nombre de processeurs)
+    @ConfigProperty(name = "dgi.import.mapping-parallelism", defaultValue = "0")
+    int mappingParallelism;
+
+    // Tranches prêtes en attente de soumission: au-delà, la lecture du fichier attend
+    @ConfigProperty(name = "dgi.import.queue-capacity", defaultValue = "2")
+    int queueCapacity;
+
+    // Erreurs détaillées dans la réponse d'un import; au-delà, seul leur nombre est donné
+    @ConfigProperty(name = "dgi.import.max-reported-errors", defaultValue = "1000")
+    int maxReportedErrors;
+
+    // Une session en cours sans point de reprise depuis ce délai est considérée comme interrompue
+    @ConfigProperty(name = "dgi.import.session-lease", defaultValue = "PT10M")
+    Duration sessionLease;
+
+    // Sentinelle de fin de la file de soumission (comparée par identité)
+    private static final ImportChunk END_OF_IMPORT = new ImportChunk(List.of(), List.of(), 0);
+
+    private ForkJoinPool mappingPool;
+    private ExecutorService submissionExecutor;
+
+    record RowGroup(List<InvoiceRow> rows, String error) {
+
+        String rn() {
+            return rows.get(0).get(0);
+        }
+
+        int lastRow() {
+            return rows.get(rows.size() - 1).getRowNum();
+        }
+    }
+
+    // Tranche transmise à l'étape de soumission: factures à soumettre, RN repris d'une exécution
+    // précédente (relus pour le fichier résultat) et dernière ligne couverte (point de reprise)
+    private record ImportChunk(List<InvoiceEntity> invoices, List<String> resumedRns, int lastRow) { }
+
+    private record MappedInvoice(InvoiceEntity invoice, String error) { }
+
+    @PostConstruct
+    void init() {
+        mappingPool = new ForkJoinPool(mappingParallelism > 0
+                ? mappingParallelism : Runtime.getRuntime().availableProcessors());
+        submissionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        mappingPool.shutdownNow();
+        submissionExecutor.shutdownNow();
+    }
+
+    /**
+     * Lit le fichier en flux, crée les factures valides et les soumet à la DGI
+     * par tranches de dgi.import.chunk-size factures
+     *
+     * Les lignes consécutives portant le même RN forment une seule facture à plusieurs articles.
+     * L'import est un pipeline: la lecture regroupe les lignes, chaque tranche est validée et
+     * convertie en parallèle (mappingPool), puis passée par une file bornée à l'étape de
+     * soumission qui appelle la DGI pendant que la tranche suivante est préparée.
+     *
+     * Chaque import est enregistré dans une ImportSession (empreinte du fichier): après
+     * un échec, un nouvel envoi du même fichier ne revalide pas les lignes situées avant
+     * le point de reprise et ne resoumet que celles dont la facture n'est pas finalisée
+     * (PENDING ou PHASE1); les factures déjà confirmées sont conservées.
+     *
+     * Seul un import Excel produit un fichier résultat (le classeur complété des colonnes DGI).
+     *
+     * @param source Le fichier sur disque (voir stage)
+     * @param format Le format du fichier
+     * @param entreprise L'entreprise émettrice
+     * @param job Le travail dont la progression est mise à jour
+     */
+    public void importFile(Path source, Format format, EntrepriseProfile entreprise, InvoiceJob job) throws IOException {
+        List<RowGroup> batch = new ArrayList<>(chunkSize);
+        List<String> resumedRns = new ArrayList<>();
+
+        job.start(0);
+
+        // Session d'import: un nouvel envoi du même fichier reprend après le dernier point de reprise
+        String fileHash = sha256(source);
+        ImportSession session = QuarkusTransaction.requiringNew()
+                .call(() -> ImportSession.open(entreprise.email, fileHash, sessionLease));
+        int resumeAfter = session.lastRow;
+        if (resumeAfter > 0) {
+            LOG.info("Reprise de l'import " + session.id + " après la ligne " + resumeAfter);
+        }
+
+        // Bilan de l'import: compteurs, erreurs plafonnées et, pour Excel, journal des résultats
+        Path resultLog = format == Format.EXCEL ? job.own(Files.createTempFile("dgi-result-", ".ndjson")) : null;
+        ImportResults results = new ImportResults(maxReportedErrors, resultLog);
+        Consumer<String> rejected = error -> {
+            results.rejected(error);
+            job.recordRejected();
+        };
+
+        SubmissionStage submission = new SubmissionStage(session, entreprise, job, results, rejected);
+        try (results) {
+            // Lire le fichier ligne par ligne, les lignes d'un même RN formant une facture
+            RowGrouper grouper = new RowGrouper(group -> {
+                job.expand(1);
+                if (group.lastRow() <= resumeAfter) {
+                    // Traitée lors d'une exécution précédente: pas revalidée, renvoyée seulement si non finalisée
+                    if (group.rn() != null && group.error() == null) {
+                        resumedRns.add(group.rn());
+                    }
+                } else {
+                    batch.add(group);
+                }
+                if (batch.size() >= chunkSize || resumedRns.size() >= chunkSize) {
+                    submission.handOff(mapBatch(batch, entreprise, rejected), resumedRns, lastRow(batch));
+                    batch.clear();
+                    resumedRns.clear();
+                }
+            });
+            rowSource(format).read(source.toFile(), grouper);
+            grouper.finish();
+            submission.handOff(mapBatch(batch, entreprise, rejected), resumedRns, lastRow(batch));
+            submission.finish();
+        } catch (RuntimeException | IOException e) {
+            QuarkusTransaction.requiringNew().run(() -> ImportSession.close(session.id, "FAILED"));
+            throw e;
+        } finally {
+            submission.cancel();
+        }
+        QuarkusTransaction.requiringNew().run(() -> ImportSession.close(session.id, "COMPLETED"));
+
+        // Préparer la réponse
+        String responseMessage = String.format(
+            "Import terminé. %d factures créées avec succès. %d erreurs.",
+            results.processedCount(), results.errorCount()
+        );
+        if (results.isErrorSampleTruncated()) {
+            responseMessage += " Seules les " + maxReportedErrors + " premières erreurs sont détaillées.";
+        }
+        if (resumeAfter > 0) {
+            responseMessage += " Import repris après la ligne " + resumeAfter + ".";
+        }
+        UploadResponse response = new UploadResponse(responseMessage, results.errorSample(),
+                results.processedCount(), results.errorCount());
+
+        if (results.errorCount() > 0 || format != Format.EXCEL) {
+            job.complete(response, null);
+            return;
+        }
+
+        // Fichier Excel mis à jour, écrit sur disque puis servi en flux au téléchargement
+        Path result = job.own(Files.createTempFile("dgi-result-", ".xlsx"));
+        try (OutputStream out = Files.newOutputStream(result)) {
+            excelTraitement.writeResults(source, resultLog, out);
+        }
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(resultLog);
+        job.complete(response, out -> Files.copy(result, out));
+    }
+
+    /**
+     * Valide le fichier sans rien persister ni envoyer à la DGI (mode dryRun)
+     *
+     * Les mêmes étapes que l'import sont exécutées (regroupement par RN, validation et
+     * construction des factures en parallèle), les factures construites sont ensuite ignorées.
+     *
+     * @param source Le fichier sur disque
+     * @param format Le format du fichier
+     * @param entreprise L'entreprise émettrice
+     * @return Le rapport: totaux et erreurs ligne par ligne
+     */
+    public ValidationReport validateFile(Path source, Format format, EntrepriseProfile entreprise) throws IOException {
+        List<String> errors = new ArrayList<>();
+        List<RowGroup> batch = new ArrayList<>(chunkSize);
+        int[] rows = {0};
+        int[] invoices = {0};
+        int[] valid = {0};
+
+        RowGrouper grouper = new RowGrouper(group -> {
+            rows[0] += group.rows().size();
+            invoices[0]++;
+            batch.add(group);
+            if (batch.size() >= chunkSize) {
+                valid[0] += mapBatch(batch, entreprise, errors::add).size();
+                batch.clear();
+            }
+        });
+        rowSource(format).read(source.toFile(), grouper);
+        grouper.finish();
+        if (!batch.isEmpty()) {
+            valid[0] += mapBatch(batch, entreprise, errors::add).size();
+        }
+
+        return new ValidationReport(rows[0], invoices[0], valid[0], errors);
+    }
+
+    /**
+     * Enregistre le corps d'une requête dans un fichier temporaire, sans le charger en mémoire
+     */
+    public Path stage(InputStream upload, Format format) throws IOException {
+        Path staged = Files.createTempFile("dgi-import-", format.suffix);
+        try {
+            Files.copy(upload, staged, StandardCopyOption.REPLACE_EXISTING);
+            return staged;
+        } catch (IOException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+    }
+
+    /**
+     * Reprend le fichier temporaire d'un upload multipart, supprimé par Quarkus à la fin
+     * de la requête: déplacé (sans copie sur un même disque) vers un fichier du travail
+     */
+    public Path stage(Path upload, Format format) throws IOException {
+        Path staged = Files.createTempFile("dgi-import-", format.suffix);
+        return Files.move(upload, staged, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Valide et construit en parallèle les factures d'une tranche
+     *
+     * Les erreurs sont reportées dans l'ordre du fichier, depuis le thread appelant.
+     *
+     * @return Les factures valides, dans l'ordre du fichier
+     */
+    private List<InvoiceEntity> mapBatch(List<RowGroup> groups, EntrepriseProfile entreprise,
+                                         Consumer<String> rejected) {
+        if (groups.isEmpty()) {
+            return List.of();
+        }
+        List<MappedInvoice> mapped = mappingPool.submit(() -> groups.parallelStream()
+                .map(group -> mapGroup(group, entreprise))
+                .toList()).join();
+
+        List<InvoiceEntity> invoices = new ArrayList<>(mapped.size());
+        for (MappedInvoice result : mapped) {
+            if (result.error() != null) {
+                rejected.accept(result.error());
+            } else {
+                invoices.add(result.invoice());
+            }
+        }
+        return invoices;
+    }
+
+    /**
+     * Construit la facture d'un groupe de lignes
+     *
+     * L'en-tête (client, devise, mode, références) vient de la première ligne, chaque
+     * ligne apporte un article. Une ligne invalide écarte toute la facture: une facture
+     * incomplète ne doit pas être soumise à la DGI.
+     */
+    private MappedInvoice mapGroup(RowGroup group, EntrepriseProfile entreprise) {
+        InvoiceRow first = group.rows().get(0);
+        if (group.error() != null) {
+            return new MappedInvoice(null, "Ligne " + first.getRowNum() + ": " + group.error());
+        }
+
+        String discarded = group.rows().size() > 1 ? " (facture " + first.get(0) + " écartée)" : "";
+        InvoiceEntity invoice = null;
+        for (InvoiceRow row : group.rows()) {
+            try {
+                // Valider la ligne avant création
+                String error = validateRow(row);
+                if (error == null && invoice != null) {
+                    error = checkSameInvoice(invoice, row);
+                }
+                if (error != null) {
+                    return new MappedInvoice(null, "Ligne " + row.getRowNum() + ": " + error + discarded);
+                }
+
+                if (invoice == null) {
+                    invoice = createInvoiceFromRow(row, entreprise);
+                } else {
+                    invoice.items.add(createItemFromRow(row));
+                }
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Erreur traitement ligne " + row.getRowNum(), e);
+                return new MappedInvoice(null, "Ligne " + row.getRowNum() + ": " + e.getMessage() + discarded);
+            }
+        }
+
+        // Calculer les montants sur l'ensemble des articles
+        calculateInvoiceAmounts(invoice);
+        return new MappedInvoice(invoice, null);
+    }
+
+    /**
+     * Persiste une tranche de factures puis la soumet à la DGI
+     *
+     * @return Les factures traitées, dans l'ordre de la tranche (les factures écartées en sont absentes)
+     */
+    private List<InvoiceEntity> submitChunk(List<InvoiceEntity> invoices, ImportSession session, EntrepriseProfile entreprise,
+                                            InvoiceJob job, Consumer<String> rejected) {
+        // Une place par facture retenue: la facture déjà confirmée, ou null pour une facture à soumettre
+        List<InvoiceEntity> slots = new ArrayList<>();
+
+        // Persister les factures (transaction courte, avant les appels DGI)
+        // Le RN est unique par NIF: une facture déjà connue est reprise au lieu d'être recréée
+        List<InvoiceEntity> toSubmit = QuarkusTransaction.requiringNew().call(() -> {
+            Map<String, InvoiceEntity> existingByRn = InvoiceEntity.findByRns(entreprise.nif,
+                    invoices.stream().map(invoice -> invoice.rn).toList());
+            List<InvoiceEntity> kept = new ArrayList<>();
+            for (InvoiceEntity invoice : invoices) {
+                InvoiceEntity existing = existingByRn.get(invoice.rn);
+                if (existing == null) {
+                    invoice.persist();
+                    kept.add(invoice);
+                    slots.add(null);
+                } else if ("CONFIRMED".equals(existing.status) && session.isResumed()) {
+                    // Confirmée lors d'une exécution précédente du même fichier
+                    slots.add(existing);
+                    job.record(existing);
+                } else if ("CONFIRMED".equals(existing.status) || "SUBMIT_UNKNOWN".equals(existing.status)) {
+                    rejected.accept("RN " + invoice.rn + ": facture déjà soumise à la DGI (" + existing.status + ")");
+                } else {
+                    if ("PENDING".equals(existing.status)) {
+                        existing.submitAttempts = 0;
+                    }
+                    kept.add(existing);
+                    slots.add(null);
+                }
+            }
+            return kept;
+        });
+
+        return submitInOrder(slots, toSubmit, entreprise, job);
+    }
+
+    /**
+     * Soumet les factures en parallèle à la DGI et replace leurs résultats dans l'ordre du fichier
+     *
+     * @param slots Une place par facture: la facture à conserver telle quelle, ou null pour
+     *              la prochaine facture de toSubmit
+     * @return Les factures traitées, dans l'ordre de slots
+     */
+    private List<InvoiceEntity> submitInOrder(List<InvoiceEntity> slots, List<InvoiceEntity> toSubmit,
+                                              EntrepriseProfile entreprise, InvoiceJob job) {
+        String entrepriseKey = entreprise.nif != null ? entreprise.nif : entreprise.email;
+        Iterator<InvoiceEntity> submitted = batchSubmitter.submitAll(toSubmit, entrepriseKey, entreprise.token, job::record)
+                .iterator();
+        List<InvoiceEntity> processed = new ArrayList<>(slots.size());
+        for (InvoiceEntity slot : slots) {
+            processed.add(slot != null ? slot : submitted.next());
+        }
+        return processed;
+    }
+
+    private RowSource rowSource(Format format) {
+        return switch (format) {
+            case EXCEL -> excelReader::read;
+            case CSV -> csvReader::read;
+            case NDJSON -> ndjsonReader::read;
+        };
+    }
+
+    /**
+     * Dernière ligne du fichier couverte par une tranche de groupes, 0 si la tranche est vide
+     */
+    private static int lastRow(List<RowGroup> groups) {
+        return groups.isEmpty() ? 0 : groups.get(groups.size() - 1).lastRow();
+    }
+
+    /**
+     * Reprend les factures situées avant le point de reprise d'une exécution précédente
+     *
+     * Les factures dans un état final (CONFIRMED, SUBMIT_UNKNOWN) ou en cours de soumission
+     * sont seulement relues pour le fichier résultat; celles restées PENDING (soumission
+     * échouée ou jamais tentée) ou en PHASE1 sont soumises à nouveau.
+     *
+     * @return Les factures trouvées, dans l'ordre des RN (ordre du fichier)
+     */
+    private List<InvoiceEntity> loadResumed(List<String> rns, EntrepriseProfile entreprise, InvoiceJob job) {
+        Map<String, InvoiceEntity> byRn = QuarkusTransaction.requiringNew().call(() -> {
+            Map<String, InvoiceEntity> found = InvoiceEntity.findByRns(entreprise.nif, rns);
+            // Nouvel envoi du fichier: le budget de tentatives est réinitialisé, comme pour une demande explicite
+            for (InvoiceEntity invoice : found.values()) {
+                if ("PENDING".equals(invoice.status)) {
+                    invoice.submitAttempts = 0;
+                }
+            }
+            return found;
+        });
+
+        List<InvoiceEntity> slots = new ArrayList<>(byRn.size());
+        List<InvoiceEntity> toSubmit = new ArrayList<>();
+        for (String rn : rns) {
+            InvoiceEntity invoice = byRn.get(rn);
+            if (invoice == null) {
+                // RN sans facture: ligne rejetée lors de l'exécution précédente
+                job.recordRejected();
+            } else if ("PENDING".equals(invoice.status) || "PHASE1".equals(invoice.status)) {
+                slots.add(null);
+                toSubmit.add(invoice);
+            } else {
+                slots.add(invoice);
+                job.record(invoice);
+            }
+        }
+        if (!toSubmit.isEmpty()) {
+            LOG.info("Reprise: " + toSubmit.size() + " facture(s) non finalisée(s) soumise(s) à nouveau");
+        }
+        return submitInOrder(slots, toSubmit, entreprise, job);
+    }
+
+    /**
+     * Empreinte SHA-256 du fichier, qui identifie la session d'import
+     */
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    String validateRow(InvoiceRow row) {
+        // Colonnes selon votre fichier Excel avec les nouvelles colonnes:
+        // A(0): rn, B(1): type, C(2): clientNif, D(3): clientName, E(4): clientType, 
+        // F(5): itemCode, G(6): itemName, H(7): itemPrice, I(8): itemQuantity, 
+        // J(9): itemTaxGroup, K(10): itemArticleType, L(11): unitPriceMode, 
+        // M(12): currency, N(13): unit, O(14): specificTaxAmount, P(15): taxSpecificValue,
+        // Q(16): mode, R(17): reference, S(18): referenceType, T(19): referenceDesc,
+        // U(20): curCode, V(21): curDate, W(22): curRate
+        
+        // Ligne illisible dans le fichier source
+        if (row.getError() != null) return row.getError();
+
+        // Validation des champs obligatoires
+        if (row.isEmpty(0)) return "RN manquant";
+        if (row.isEmpty(1)) return "Type de facture manquant";
+        if (row.isEmpty(2)) return "NIF client manquant";
+        if (row.isEmpty(3)) return "Nom client manquant";
+        if (row.isEmpty(4)) return "Type de client manquant";
+        if (row.isEmpty(5)) return "Code article manquant";
+        if (row.isEmpty(6)) return "Nom article manquant";
+        if (row.isEmpty(7)) return "Prix manquant";
+        if (row.isEmpty(8)) return "Quantité manquante";
+        if (row.isEmpty(9)) return "Groupe de taxe manquant";
+        if (row.isEmpty(10)) return "Type d'article manquant";
+        if (row.isEmpty(11)) return "Mode de prix manquant";
+        if (row.isEmpty(12)) return "Devise manquante";
+        
+        // Valider le client selon votre fichier Excel
+        String clientType = row.get(4); // Colonne E: clientType
+        String clientNif = row.get(2); // Colonne C: clientNif
+        String clientName = row.get(3); // Colonne D: clientName
+        
+        // Valider le type de client
+        if (clientType == null || clientType.trim().isEmpty()) {
+            return "Type de client manquant";
+        }
+        
+        // Valider les types de client autorisés
+        List<String> validClientTypes = Arrays.asList("PP", "PM", "PC", "PL", "AO");
+        String normalizedClientType = clientType.toUpperCase();
+        if (!validClientTypes.contains(normalizedClientType)) {
+            return "Type de client invalide. Doit être: PP, PM, PC, PL ou AO";
+        }
+        
+        // Valider le NIF selon le type de client
+        if (!"PP".equalsIgnoreCase(clientType)) {
+            // Pour tous les types sauf PP, le NIF est obligatoire
+            if (clientNif == null || clientNif.trim().isEmpty()) {
+                return "NIF client obligatoire pour le type " + clientType;
+            }
+            
+            // Valider le format du NIF (exemple: commencer par NIF)
+            if (!clientNif.startsWith("NIF")) {
+                return "Format NIF invalide. Doit commencer par 'NIF'";
+            }
+        } else {
+            // Pour PP, le NIF peut être null ou vide
+            // Mais on valide le nom client
+            if (clientName == null || clientName.trim().isEmpty()) {
+                return "Nom client obligatoire pour les clients PP";
+            }
+        }
+        
+        // Valider les valeurs numériques: une valeur illisible ne doit pas être envoyée à 0
+        if (!isNumber(row.get(7))) {
+            return "Prix invalide (nombre attendu): " + row.get(7);
+        }
+        if (!isNumber(row.get(8))) {
+            return "Quantité invalide (nombre attendu): " + row.get(8);
+        }
+        if (!row.isEmpty(14) && !isNumber(row.get(14))) {
+            return "Montant de taxe spécifique invalide (nombre attendu): " + row.get(14);
+        }
+        if (row.getDecimal(7).compareTo(BigDecimal.ZERO) <= 0) {
+            return "Le prix doit être supérieur à 0";
+        }
+        
+        if (row.getDecimal(8).compareTo(BigDecimal.ZERO) <= 0) {
+            return "La quantité doit être supérieure à 0";
+        }
+        
+        // Valider les informations de devise si fournies
+        String curCode = row.get(20); // Colonne U: curCode
+        String curDateStr = row.get(21); // Colonne V: curDate
+        String curRateStr = row.get(22); // Colonne W: curRate
+        
+        if (curCode != null && !curCode.trim().isEmpty()) {
+            // Si le code devise est fourni, valider la date et le taux
+            if (curDateStr == null || curDateStr.trim().isEmpty()) {
+                return "Date de devise manquante quand le code devise est fourni";
+            }
+            
+            if (curRateStr == null || curRateStr.trim().isEmpty()) {
+                return "Taux de change manquant quand le code devise est fourni";
+            }
+            
+            if (!isNumber(curRateStr)) {
+                return "Taux de change invalide (nombre attendu): " + curRateStr;
+            }
+            if (row.getDecimal(22).compareTo(BigDecimal.ZERO) <= 0) {
+                return "Le taux de change doit être supérieur à 0";
+            }
+        }
+        
+        return null; // Pas d'erreur
+    }
+
+    private InvoiceEntity createInvoiceFromRow(InvoiceRow row, EntrepriseProfile entreprise) {
+        InvoiceEntity invoice = new InvoiceEntity();
+        
+        // Récupérer l'entreprise via le token
+        invoice.email = entreprise.email;
+        invoice.nif = entreprise.nif;
+        invoice.companyName = entreprise.nom;
+        invoice.isf = entreprise.isf;
+        
+        // Informations de base depuis Excel avec les bons indices
+        // Note: les indices ont changé à cause de l'ajout de la colonne taxSpecificValue
+        // A(0): rn, B(1): type, C(2): clientNif, D(3): clientName, E(4): clientType, 
+        // F(5): itemCode, G(6): itemName, H(7): itemPrice, I(8): itemQuantity, 
+        // J(9): itemTaxGroup, K(10): itemArticleType, L(11): unitPriceMode, 
+        // M(12): currency, N(13): unit, O(14): specificTaxAmount, P(15): taxSpecificValue,
+        // Q(16): mode, R(17): reference, S(18): referenceType, T(19): referenceDesc,
+        // U(20): curCode, V(21): curDate, W(22): curRate
+        
+        invoice.rn = row.get(0); // Colonne A: rn
+        invoice.type = row.get(1); // Colonne B: type (FV)
+        
+        // Client
+        invoice.client = new InvoiceEntity.Client();
+        invoice.client.nif = row.get(2); // Colonne C: clientNif
+        invoice.client.name = row.get(3); // Colonne D: clientName
+        invoice.client.type = row.get(4); // Colonne E: clientType
+        
+        // Déterminer la description du type de client
+        invoice.client.typeDesc = getClientTypeDescription(invoice.client.type);
+        
+        // Mode de prix et devise
+        String unitPriceMode = row.get(11); // Colonne L: unitPriceMode
+        //invoice.mode = "ht".equals(unitPriceMode) ? "HT" : "TTC";
+        
+        invoice.currency = row.get(12); // Colonne M: currency
+        
+        // Mode final (colonne Q - maintenant à l'index 16)
+        String modeValue = row.get(16); // Colonne Q: mode
+        if (modeValue != null) {
+            if (modeValue.equals("0") || modeValue.equals("1")) {
+                invoice.mode = modeValue.equals("0") ? "ht" : "ttc";
+            } else if (modeValue.equalsIgnoreCase("ht") || modeValue.equalsIgnoreCase("ttc")) {
+                invoice.mode = modeValue.toLowerCase();
+            }
+        }
+        
+        // === CHAMPS POUR FACTURES D'AVOIR ===
+        // Les indices ont changé à cause de l'ajout de taxSpecificValue
+        invoice.reference = row.get(17); // Colonne R: reference (était Q)
+        invoice.referenceType = row.get(18); // Colonne S: referenceType (était R)
+        invoice.referenceDesc = row.get(19); // Colonne T: referenceDesc (était S)
+        
+        // === CHAMPS POUR DEVISES ===
+        // Les indices ont changé à cause de l'ajout de taxSpecificValue
+        invoice.curCode = row.get(20); // Colonne U: curCode (était T)
+        
+        // Gestion de la date de devise
+        String curDateStr = row.get(21); // Colonne V: curDate (était U)
+        if (curDateStr != null && !curDateStr.trim().isEmpty()) {
+            try {
+                // Essayer de parser comme LocalDateTime
+                invoice.curDate = LocalDateTime.parse(curDateStr);
+            } catch (Exception e) {
+                try {
+                    // Essayer de parser comme LocalDate et convertir
+                    LocalDate date = LocalDate.parse(curDateStr);
+                    invoice.curDate = date.atStartOfDay();
+                } catch (Exception e2) {
+                    // Date par défaut (les cellules date Excel sont déjà converties au format ISO)
+                    invoice.curDate = LocalDateTime.now();
+                }
+            }
+        }
+        
+        // Taux de change (colonne W - maintenant à l'index 22)
+        String curRateStr = row.get(22); // Colonne W: curRate (était V)
+        if (curRateStr != null && !curRateStr.trim().isEmpty()) {
+            try {
+                invoice.curRate = new BigDecimal(curRateStr);
+            } catch (NumberFormatException e) {
+                invoice.curRate = BigDecimal.ONE; // Valeur par défaut
+            }
+        } else {
+            invoice.curRate = BigDecimal.ONE; // Valeur par défaut
+        }
+        
+        // Initialiser la liste d'items (les lignes suivantes du même RN y sont ajoutées)
+        invoice.items = new ArrayList<>();
+        invoice.items.add(createItemFromRow(row));
+        
+        // Dates par défaut
+        invoice.issueDate = LocalDateTime.now();
+        invoice.dueDate = LocalDateTime.now().plusDays(30);
+        invoice.createdAt = LocalDateTime.now();
+        invoice.updatedAt = LocalDateTime.now();
+        
+        // Statut
+        invoice.status = "PENDING";
+        
+        // Operator (celui qui a créé la facture)
+        invoice.operator = new InvoiceEntity.Operator();
+        invoice.operator.id = entreprise.id;
+        invoice.operator.name = entreprise.nom;
+        
+        // UID unique
+        invoice.uid = UUID.randomUUID().toString();
+        
+        return invoice;
+    }
+
+    /**
+     * Article d'une ligne: colonnes F(5) à P(15)
+     */
+    private InvoiceEntity.Item createItemFromRow(InvoiceRow row) {
+        InvoiceEntity.Item item = new InvoiceEntity.Item();
+        item.code = row.get(5); // Colonne F: itemCode
+        item.name = row.get(6); // Colonne G: itemName
+        item.price = row.getDecimal(7); // Colonne H: itemPrice
+        item.quantity = row.getDecimal(8); // Colonne I: itemQuantity
+        item.taxGroup = row.get(9); // Colonne J: itemTaxGroup
+        
+        // Type d'article (SER ou BIE)
+        String articleType = row.get(10); // Colonne K: itemArticleType
+        item.type = "BIE".equals(articleType) ? "BIE" : "SER"; // B pour Bien, S pour Service
+        
+        // Unit (colonne N) - non utilisé dans InvoiceEntity pour l'instant
+        String unit = row.get(13); // Colonne N: unit
+        
+        // Taxe spécifique
+        BigDecimal taxSpecificAmount = row.getDecimal(14); // Colonne O: specificTaxAmount
+        if(taxSpecificAmount != null && taxSpecificAmount.compareTo(BigDecimal.ZERO) > 0) {
+            item.taxSpecificAmount = taxSpecificAmount;
+        }
+        
+        // Ce champ est requis lorsque taxSpecificAmount est spécifié 
+        String taxSpecificValue = row.get(15); // Colonne P: taxSpecificValue
+        if (taxSpecificValue != null && !taxSpecificValue.trim().isEmpty()) {
+            item.taxSpecificValue = taxSpecificValue;
+        }
+        
+        return item;
+    }
+
+    /**
+     * Vérifie qu'une ligne supplémentaire reprend l'en-tête de la facture en cours
+     *
+     * @return Le message d'erreur, ou null si la ligne peut être ajoutée
+     */
+    private String checkSameInvoice(InvoiceEntity invoice, InvoiceRow row) {
+        if (!Objects.equals(invoice.type, row.get(1))) return "Type de facture différent de la première ligne du RN";
+        if (!Objects.equals(invoice.client.nif, row.get(2))) return "NIF client différent de la première ligne du RN";
+        if (!Objects.equals(invoice.client.type, row.get(4))) return "Type de client différent de la première ligne du RN";
+        if (!Objects.equals(invoice.currency, row.get(12))) return "Devise différente de la première ligne du RN";
+        return null;
+    }
+
+    private String getClientTypeDescription(String clientType) {
+            if (clientType == null) return "Personne Physique";
+            
+            return switch (clientType.toUpperCase()) {
+                case "PP" -> "Personne Physique";
+                case "PM" -> "Personne Morale";
+                case "PC" -> "Professionnel Commerçant";
+                case "PL" -> "Personne Libérale";
+                case "AO" -> "Administration ou Organisme Public";
+                default -> "Personne Physique";
+            };
+        }
+
+    private void calculateInvoiceAmounts(InvoiceEntity invoice) {
+        if (invoice.items == null || invoice.items.isEmpty()) {
+            invoice.subtotal = BigDecimal.ZERO;
+            invoice.total = BigDecimal.ZERO;
+            invoice.curTotal = BigDecimal.ZERO;
+            invoice.vtotal = BigDecimal.ZERO;
+            return;
+        }
+        
+        BigDecimal subtotal = BigDecimal.ZERO;
+        
+        for (InvoiceEntity.Item item : invoice.items) {
+            if (item.price != null && item.quantity != null) {
+                BigDecimal itemTotal = item.price.multiply(item.quantity);
+                subtotal = subtotal.add(itemTotal);
+                
+                // Ajouter la taxe spécifique si présente
+                if (item.taxSpecificAmount != null) {
+                    subtotal = subtotal.add(item.taxSpecificAmount);
+                }
+            }
+        }
+        
+        invoice.subtotal = subtotal;
+        
+        // Ajuster selon le taux de change si différent de 1
+        if (invoice.curRate != null && invoice.curRate.compareTo(BigDecimal.ONE) != 0) {
+            invoice.total = subtotal.multiply(invoice.curRate);
+            invoice.curTotal = subtotal;
+        } else {
+            invoice.total = subtotal;
+            invoice.curTotal = subtotal;
+        }
+        
+        // Pour vtotal (peut être différent selon votre logique fiscale)
+        invoice.vtotal = invoice.total;
+    }
+
+
+    /**
+     * Vrai si la valeur est un nombre en notation décimale simple
+     */
+    private boolean isNumber(String value) {
+        if (value == null) return false;
+        try {
+            new BigDecimal(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Regroupe les lignes consécutives d'un même RN (étape séquentielle de la lecture)
+     *
+     * Un RN qui réapparaît après une autre facture forme un groupe en erreur.
+     */
+    static final class RowGrouper implements Consumer<InvoiceRow> {
+
+        private final Consumer<RowGroup> sink;
+        private final Set<String> seenRns = new HashSet<>();
+
+        private String currentRn;
+        private List<InvoiceRow> current;
+
+        RowGrouper(Consumer<RowGroup> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void accept(InvoiceRow row) {
+            String rn = row.get(0);
+            if (current != null && rn != null && rn.equals(currentRn)) {
+                current.add(row);
+                return;
+            }
+
+            // Nouveau RN: le groupe précédent est complet
+            finish();
+            currentRn = rn;
+            current = new ArrayList<>();
+            current.add(row);
+        }
+
+        /**
+         * Transmet le groupe en cours, à appeler aussi après la dernière ligne
+         */
+        void finish() {
+            if (current == null) {
+                return;
+            }
+            String error = currentRn != null && !seenRns.add(currentRn)
+                    ? "RN " + currentRn + " déjà utilisé plus haut dans le fichier"
+                            + " (les lignes d'une facture doivent être consécutives)"
+                    : null;
+            sink.accept(new RowGroup(current, error));
+            current = null;
+        }
+    }
+
+    /**
+     * Étape de soumission du pipeline d'import
+     *
+     * Un thread virtuel consomme les tranches déposées dans une file bornée: si la DGI
+     * est plus lente que la lecture, handOff attend, ce qui limite les factures en mémoire.
+     * Le point de reprise de la session avance après chaque tranche soumise.
+     */
+    private final class SubmissionStage {
+
+        private final BlockingQueue<ImportChunk> queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        private final Future<?> worker;
+
+        SubmissionStage(ImportSession session, EntrepriseProfile entreprise, InvoiceJob job, ImportResults results,
+                        Consumer<String> rejected) {
+            worker = submissionExecutor.submit(() -> {
+                while (true) {
+                    ImportChunk chunk = queue.take();
+                    if (chunk == END_OF_IMPORT) {
+                        return null;
+                    }
+                    // Résultats transmis au bilan tranche par tranche: aucune facture n'est gardée
+                    if (!chunk.resumedRns().isEmpty()) {
+                        results.processed(loadResumed(chunk.resumedRns(), entreprise, job));
+                    }
+                    if (!chunk.invoices().isEmpty()) {
+                        results.processed(submitChunk(chunk.invoices(), session, entreprise, job, rejected));
+                    }
+                    if (chunk.lastRow() > 0) {
+                        QuarkusTransaction.requiringNew().run(() -> ImportSession.checkpoint(session.id, chunk.lastRow()));
+                    }
+                }
+            });
+        }
+
+        /**
+         * Dépose une tranche, en attendant une place dans la file
+         *
+         * @param invoices Les factures construites de la tranche
+         * @param resumedRns Les RN déjà traités lors d'une exécution précédente (copiés)
+         * @param lastRow La dernière ligne du fichier couverte par la tranche, 0 si aucune
+         */
+        void handOff(List<InvoiceEntity> invoices, List<String> resumedRns, int lastRow) {
+            if (invoices.isEmpty() && resumedRns.isEmpty() && lastRow == 0) {
+                return;
+            }
+            put(new ImportChunk(invoices, List.copyOf(resumedRns), lastRow));
+        }
+
+        /**
+         * Attend la soumission de toutes les tranches déposées
+         */
+        void finish() {
+            put(END_OF_IMPORT);
+            awaitWorker();
+        }
+
+        /**
+         * Arrête l'étape si l'import a été interrompu (sans effet après finish)
+         */
+        void cancel() {
+            worker.cancel(true);
+        }
+
+        private void put(ImportChunk chunk) {
+            try {
+                while (!queue.offer(chunk, 1, TimeUnit.SECONDS)) {
+                    if (worker.isDone()) {
+                        // Échec de la soumission: plus personne ne vide la file
+                        awaitWorker();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Import interrompu", e);
+            }
+        }
+
+        private void awaitWorker() {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Import interrompu", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Échec de la soumission: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.middleware.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Lecture en flux de la première feuille d'un classeur .xlsx (modèle SAX de POI)
+ *
+ * Contrairement à XSSFWorkbook, aucune représentation du classeur n'est construite:
+ * chaque ligne est convertie en InvoiceRow puis transmise au consommateur, avec une
+ * mémoire constante quelle que soit la taille de la feuille. Le fichier est ouvert
+ * en lecture seule depuis le disque, sans être chargé en mémoire.
+ */
+@ApplicationScoped
+public class ExcelStreamReader {
+
+    /**
+     * Lit les lignes de données (l'en-tête et les lignes vides sont ignorés)
+     *
+     * @param file Le fichier .xlsx, lu directement sur disque (accès aléatoire au zip)
+     * @param consumer Appelé pour chaque ligne, dans l'ordre du fichier
+     */
+    public void read(File file, Consumer<InvoiceRow> consumer) throws IOException {
+        read(file, consumer, true);
+    }
+
+    /**
+     * Lit toutes les lignes non vides, en-tête compris (réécriture du fichier)
+     */
+    public void readWithHeader(File file, Consumer<InvoiceRow> consumer) throws IOException {
+        read(file, consumer, false);
+    }
+
+    /**
+     * Nom de la première feuille, null si le classeur n'en a aucune
+     */
+    public String firstSheetName(File file) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Fichier Excel invalide: " + e.getMessage(), e);
+        }
+
+        try {
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+            if (!sheets.hasNext()) {
+                return null;
+            }
+            try (InputStream ignored = sheets.next()) {
+                return sheets.getSheetName();
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException("Lecture du fichier Excel impossible: " + e.getMessage(), e);
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    private void read(File file, Consumer<InvoiceRow> consumer, boolean skipHeader) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Fichier Excel invalide: " + e.getMessage(), e);
+        }
+
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(
+                        styles, null, strings, new RowCollector(consumer, skipHeader), new ExcelCellFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Lecture du fichier Excel impossible: " + e.getMessage(), e);
+        } finally {
+            // Lecture seule: ne jamais réécrire le paquet à la fermeture
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Regroupe les cellules reçues par le parseur en lignes
+     */
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final Consumer<InvoiceRow> consumer;
+        private boolean headerSkipped;
+        private String[] values;
+        private int lastColumn;
+
+        RowCollector(Consumer<InvoiceRow> consumer, boolean skipHeader) {
+            this.consumer = consumer;
+            this.headerSkipped = !skipHeader;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            values = new String[InvoiceRow.COLUMNS];
+            lastColumn = -1;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!headerSkipped) {
+                headerSkipped = true;
+                return;
+            }
+            InvoiceRow row = new InvoiceRow(rowNum + 1, values);
+            if (!row.isBlank()) {
+                consumer.accept(row);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? columnIndex(cellReference) : lastColumn + 1;
+            lastColumn = column;
+            if (column >= values.length || formattedValue == null) {
+                return;
+            }
+            values[column] = InvoiceRow.normalize(formattedValue);
+        }
+
+        /**
+         * Index de colonne d'une référence de cellule ("AB12" = 27), sans objet intermédiaire
+         */
+        private static int columnIndex(String cellReference) {
+            int column = 0;
+            for (int i = 0; i < cellReference.length(); i++) {
+                char c = cellReference.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                column = column * 26 + (c - 'A' + 1);
+            }
+            return column - 1;
+        }
+    }
+}
@@ -1,317 +1,178 @@
 package org.middleware.service;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.time.format.DateTimeParseException;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.middleware.models.InvoiceEntity;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
 
 @ApplicationScoped
 public class ExcelTraitement {
 
+    // Lignes gardées en mémoire par SXSSF, les précédentes sont écrites sur disque
+    private static final int ROW_WINDOW = 100;
+
+    // Colonne V(21): date de la devise
+    private static final int DATE_COLUMN = 21;
+
+    // Colonnes X(23) à AD(29): résultat DGI
+    private static final String[] RESULT_HEADERS = {
+            "errorCode", "errorDesc", "dateTime", "qrCode", "codeDEFDGI", "counters", "nim"
+    };
+
+    @Inject
+    ExcelStreamReader excelReader;
+
     /**
-     * Met à jour le fichier Excel avec les données des factures normalisées
-     * Chaque ligne Excel correspondant à une facture sera mise à jour avec les nouvelles valeurs
+     * Écrit le fichier Excel d'origine complété par les résultats DGI
+     *
+     * Le fichier d'origine est relu en flux et le résultat écrit avec SXSSF dans une
+     * fenêtre de ROW_WINDOW lignes: aucun classeur complet n'est construit en mémoire.
+     * Les colonnes A à W sont recopiées telles quelles, les colonnes X à AD reçoivent
+     * le résultat de la facture correspondant au RN de la ligne (une facture à plusieurs
+     * articles occupe plusieurs lignes). Les résultats sont relus en parallèle du fichier
+     * depuis le journal de l'import, écrit dans le même ordre.
+     *
+     * Le classeur est reconstruit à partir des valeurs: le nom de la feuille, la position
+     * des lignes et les dates (colonne V) sont conservés, mais pas la mise en forme, les
+     * formules ni les autres feuilles du fichier importé.
+     *
+     * @param originalExcel Le fichier importé
+     * @param resultLog Le journal des résultats de l'import (voir ImportResults)
+     * @param out Le flux de sortie
      */
-    public byte[] updateExcelFromInvoiceEntities(List<InvoiceEntity> invoices, byte[] originalExcel) throws IOException {
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(originalExcel);
-            Workbook workbook = new XSSFWorkbook(bis)) {
-            
-            Sheet sheet = workbook.getSheetAt(0);
-            
-            // Créer un Map pour accéder rapidement aux factures par RN
-            Map<String, InvoiceEntity> invoiceMap = invoices.stream()
-                    .filter(inv -> inv.rn != null)
-                    .collect(Collectors.toMap(inv -> inv.rn, inv -> inv));
-            
-            // Parcourir toutes les lignes Excel (en sautant l'en-tête)
-            for (int rowNum = 1; rowNum <= sheet.getLastRowNum(); rowNum++) {
-                Row row = sheet.getRow(rowNum);
-                if (row == null) continue;
-                
-                // Récupérer le RN de la ligne Excel
-                String excelRn = getStringCellValue(row.getCell(0)); // Colonne A: rn
-                
-                if (excelRn != null && invoiceMap.containsKey(excelRn)) {
-                    InvoiceEntity invoice = invoiceMap.get(excelRn);
-                    updateExcelRowFromInvoice(row, invoice);
+    public void writeResults(Path originalExcel, Path resultLog, OutputStream out) throws IOException {
+        String sheetName = excelReader.firstSheetName(originalExcel.toFile());
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        try (ImportResults.Cursor results = new ImportResults.Cursor(resultLog)) {
+            Sheet sheet = workbook.createSheet(sheetName != null ? sheetName : "Factures");
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+
+            boolean[] header = {true};
+
+            excelReader.readWithHeader(originalExcel.toFile(), source -> {
+                // Même numéro de ligne que dans le fichier importé (lignes vides comprises)
+                Row row = sheet.createRow(source.getRowNum() - 1);
+                copyOriginalColumns(row, source, header[0] ? null : dateStyle);
+
+                if (header[0]) {
+                    header[0] = false;
+                    for (int i = 0; i < RESULT_HEADERS.length; i++) {
+                        row.createCell(InvoiceRow.COLUMNS + i).setCellValue(RESULT_HEADERS[i]);
+                    }
+                    return;
                 }
+
+                try {
+                    ImportResults.Result result = results.find(source.get(0));
+                    if (result != null) {
+                        writeResultColumns(row, result);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            workbook.write(out);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            // Supprime les fichiers temporaires de SXSSF
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    /**
+     * Colonnes A(0) à W(22): valeurs du fichier importé, inchangées
+     *
+     * @param dateStyle Style des cellules date, null pour la ligne d'en-tête (recopiée en texte)
+     */
+    private void copyOriginalColumns(Row row, InvoiceRow source, CellStyle dateStyle) {
+        for (int column = 0; column < InvoiceRow.COLUMNS; column++) {
+            String value = source.get(column);
+            if (value == null) {
+                continue;
             }
-            
-            // Retourner le fichier Excel mis à jour
-            try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-                workbook.write(bos);
-                return bos.toByteArray();
+
+            Cell cell = row.createCell(column);
+            if (dateStyle != null && column == DATE_COLUMN) {
+                // Les dates sont lues au format ISO: réécrites en cellules date
+                LocalDateTime date = parseDate(value);
+                if (date != null) {
+                    cell.setCellValue(date);
+                    cell.setCellStyle(dateStyle);
+                    continue;
+                }
             }
+            if (dateStyle != null && InvoiceRow.NUMERIC_COLUMNS.contains(column)) {
+                try {
+                    cell.setCellValue(new BigDecimal(value).doubleValue());
+                    continue;
+                } catch (NumberFormatException e) {
+                    // Valeur non numérique: recopiée en texte
+                }
+            }
+            cell.setCellValue(value);
         }
     }
 
     /**
-     * Met à jour une ligne Excel spécifique avec les données d'une InvoiceEntity
-     * Cette méthode suit la même structure de colonnes que votre code existant
+     * Colonnes X(23) à AD(29): résultat de la soumission
      */
-    private void updateExcelRowFromInvoice(Row row, InvoiceEntity invoice) {
-        int colIndex = 1;
-        
-        // Colonne A: rn (ne change pas)
-        setCellValue(row, colIndex++, invoice.rn);
-        
-        // Colonne B: type
-        setCellValue(row, colIndex++, invoice.type);
-        
-        // Colonne C: clientNif
-        setCellValue(row, colIndex++, invoice.client != null ? invoice.client.nif : null);
-        
-        // Colonne D: clientName
-        setCellValue(row, colIndex++, invoice.client != null ? invoice.client.name : null);
-        
-        // Colonne E: clientType
-        setCellValue(row, colIndex++, invoice.client != null ? invoice.client.type : null);
-        
-        // Si la facture a plusieurs items, on prend le premier pour la mise à jour
-        // (ou vous pouvez adapter selon votre logique métier)
-        InvoiceEntity.Item item = invoice.items != null && !invoice.items.isEmpty() 
-                ? invoice.items.get(0) 
-                : null;
-        
-        // Colonne F: itemCode
-        setCellValue(row, colIndex++, item != null ? item.code : null);
-        
-        // Colonne G: itemName
-        setCellValue(row, colIndex++, item != null ? item.name : null);
-        
-        // Colonne H: itemPrice
-        setCellValue(row, colIndex++, item != null ? item.price : null);
-        
-        // Colonne I: itemQuantity
-        setCellValue(row, colIndex++, item != null ? item.quantity : null);
-        
-        // Colonne J: itemTaxGroup
-        setCellValue(row, colIndex++, item != null ? item.taxGroup : null);
-        
-        // Colonne K: itemArticleType - déduit du type
-        String articleType = "SER".equals(item != null ? item.type : null) ? "SER" : "BIE";
-        setCellValue(row, colIndex++, articleType);
-        
-        // Colonne L: unitPriceMode
-        // Utilisez votre logique pour déterminer le mode de prix
-        String unitPriceMode = "ht"; // Par défaut
-        if (invoice.mode != null) {
-            unitPriceMode = "ht".equalsIgnoreCase(invoice.mode) ? "ht" : "ttc";
-        }
-        setCellValue(row, colIndex++, unitPriceMode);
-        
-        // Colonne M: currency
-        setCellValue(row, colIndex++, invoice.currency);
-        
-        // Colonne N: unit
-        // Vous pouvez conserver la valeur originale ou laisser vide
-        // setCellValue(row, colIndex++, ""); // Laisser inchangé
-        
-        // Colonne O: specificTaxAmount
-        BigDecimal taxAmount = item != null ? item.taxSpecificAmount : null;
-        setCellValue(row, colIndex++, taxAmount);
-        
-        // Colonne P: taxSpecificValue
-        // Stockez la valeur de taxe spécifique si disponible
-        String taxValue = item != null ? item.taxSpecificValue : null;
-        setCellValue(row, colIndex++, taxValue);
-        
-        // Colonne Q: mode
-        setCellValue(row, colIndex++, invoice.mode);
-        
-        // Colonne R: reference
-        setCellValue(row, colIndex++, invoice.reference);
-        
-        // Colonne S: referenceType
-        setCellValue(row, colIndex++, invoice.referenceType);
-        
-        // Colonne T: referenceDesc
-        setCellValue(row, colIndex++, invoice.referenceDesc);
-        
-        // Colonne U: curCode
-        setCellValue(row, colIndex++, invoice.curCode);
-        
-        // Colonne V: curDate
-        setCellValue(row, colIndex++, invoice.curDate);
-        
-        // Colonne W: curRate
-        setCellValue(row, colIndex++, invoice.curRate);
-        
+    private void writeResultColumns(Row row, ImportResults.Result result) {
+        int colIndex = InvoiceRow.COLUMNS;
+
         // Colonne X: errorCode
-        setCellValue(row, colIndex++, invoice.errorCode);
-        
+        setCellValue(row, colIndex++, result.errorCode());
+
         // Colonne Y: errorDesc
-        setCellValue(row, colIndex++, invoice.errorDesc);
-        
+        setCellValue(row, colIndex++, result.errorDesc());
+
         // Colonne Z: dateTime
-        setCellValue(row, colIndex++, invoice.dateTime);
-        
+        setCellValue(row, colIndex++, result.dateTime());
+
         // Colonne AA: qrCode
-        setCellValue(row, colIndex++, invoice.qrCode);
-        
+        setCellValue(row, colIndex++, result.qrCode());
+
         // Colonne AB: codeDEFDGI
-        setCellValue(row, colIndex++, invoice.codeDEFDGI);
-        
+        setCellValue(row, colIndex++, result.codeDEFDGI());
+
         // Colonne AC: counters
-        setCellValue(row, colIndex++, invoice.counters);
-        
+        setCellValue(row, colIndex++, result.counters());
+
         // Colonne AD: nim
-        setCellValue(row, colIndex++, invoice.nim);
-        
-        // Mettre à jour les totaux si nécessaire (dans les cellules correspondantes)
-        updateCalculatedFields(row, invoice);
+        setCellValue(row, colIndex, result.nim());
     }
 
-    /**
-     * Met à jour les champs calculés dans Excel
-     */
-    private void updateCalculatedFields(Row row, InvoiceEntity invoice) {
-        // Si vous avez des colonnes pour les totaux, les mettre à jour ici
-        // Par exemple, si vous avez une colonne pour le total:
-        // setCellValue(row, totalColumnIndex, invoice.total);
-        
-        // Vous pouvez aussi recalculer les valeurs basées sur les nouvelles données
-        if (invoice.items != null && !invoice.items.isEmpty()) {
-            InvoiceEntity.Item item = invoice.items.get(0);
-            if (item != null && item.price != null && item.quantity != null) {
-                // Calculer et mettre à jour le montant total de l'article
-                BigDecimal itemTotal = item.price.multiply(item.quantity);
-                // setCellValue(row, itemTotalColumnIndex, itemTotal);
+    private static LocalDateTime parseDate(String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(value).atStartOfDay();
+            } catch (DateTimeParseException e2) {
+                return null;
             }
         }
     }
 
-    /**
-     * Méthodes utilitaires pour mettre à jour les cellules
-     */
     private void setCellValue(Row row, int colIndex, String value) {
-        Cell cell = row.getCell(colIndex);
-        if (cell == null) {
-            cell = row.createCell(colIndex);
-        }
-        
-        if (value != null) {
-            cell.setCellValue(value);
-        } else {
-            cell.setCellValue("");
-        }
-    }
-
-    private void setCellValue(Row row, int colIndex, BigDecimal value) {
-        Cell cell = row.getCell(colIndex);
-        if (cell == null) {
-            cell = row.createCell(colIndex);
-        }
-        
-        if (value != null) {
-            cell.setCellValue(value.doubleValue());
-        } else {
-            cell.setCellValue(0);
-        }
+        row.createCell(colIndex).setCellValue(value != null ? value : "");
     }
-
-    private void setCellValue(Row row, int colIndex, LocalDateTime value) {
-        Cell cell = row.getCell(colIndex);
-        if (cell == null) {
-            cell = row.createCell(colIndex);
-        }
-        
-        if (value != null) {
-            cell.setCellValue(value);
-        } else {
-            cell.setCellValue("");
-        }
-    }
-
-    /**
-     * Méthode utilitaire pour lire les valeurs des cellules (identique à votre code)
-     */
-    private String getStringCellValue(Cell cell) {
-        if (cell == null) return null;
-        
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue().trim();
-            case NUMERIC:
-                if (isDateCell(cell)) {
-                    try {
-                        return cell.getLocalDateTimeCellValue().toString();
-                    } catch (Exception e) {
-                        return cell.getDateCellValue().toString();
-                    }
-                } else {
-                    double num = cell.getNumericCellValue();
-                    if (num == Math.floor(num) && !Double.isInfinite(num)) {
-                        return String.valueOf((int) num);
-                    }
-                    return BigDecimal.valueOf(num).stripTrailingZeros().toPlainString();
-                }
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                try {
-                    switch (cell.getCachedFormulaResultType()) {
-                        case STRING:
-                            return cell.getStringCellValue().trim();
-                        case NUMERIC:
-                            if (isDateCell(cell)) {
-                                return cell.getLocalDateTimeCellValue().toString();
-                            } else {
-                                double num = cell.getNumericCellValue();
-                                if (num == Math.floor(num) && !Double.isInfinite(num)) {
-                                    return String.valueOf((int) num);
-                                }
-                                return BigDecimal.valueOf(num).stripTrailingZeros().toPlainString();
-                            }
-                        case BOOLEAN:
-                            return String.valueOf(cell.getBooleanCellValue());
-                        default:
-                            return "";
-                    }
-                } catch (Exception e) {
-                    return "";
-                }
-            default:
-                return null;
-        }
-    }
-
-    /**
-     * Méthode pour détecter si une cellule contient une date
-     */
-    private boolean isDateCell(Cell cell) {
-        if (cell == null) return false;
-        
-        try {
-            CellStyle style = cell.getCellStyle();
-            String format = style.getDataFormatString();
-            
-            return format != null && (
-                format.contains("d") || format.contains("m") || format.contains("y") ||
-                format.contains("D") || format.contains("M") || format.contains("Y") ||
-                format.contains("/") || format.contains("-") ||
-                format.toLowerCase().contains("date") ||
-                format.equals("m/d/yy") || format.equals("dd/mm/yyyy") ||
-                format.equals("yyyy-mm-dd") || format.equals("general")
-            );
-        } catch (Exception e) {
-            return false;
-        }
-    }
-
 }
@@ -0,0 +1,164 @@
+package org.middleware.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.middleware.models.InvoiceEntity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+/**
+ * Bilan d'un import de fichier, en mémoire constante quelle que soit la taille du fichier
+ *
+ * Seuls des compteurs et un échantillon plafonné des erreurs sont gardés. Pour un import
+ * Excel, le résultat de chaque facture est ajouté tranche par tranche à un journal sur
+ * disque (une ligne JSON par facture, dans l'ordre du fichier), relu en flux par
+ * ExcelTraitement.writeResults pour compléter le classeur.
+ */
+final class ImportResults implements Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int maxErrors;
+    private final List<String> errorSample = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicInteger processedCount = new AtomicInteger();
+
+    // Journal des résultats, null si l'import ne produit pas de fichier résultat
+    private final Path log;
+    private final BufferedWriter writer;
+
+    /**
+     * Résultat DGI d'une facture, colonnes X à AD du fichier résultat
+     */
+    @RegisterForReflection
+    record Result(String rn, String errorCode, String errorDesc, String dateTime, String qrCode,
+                  String codeDEFDGI, String counters, String nim) {
+
+        static Result of(InvoiceEntity invoice) {
+            return new Result(invoice.rn, invoice.errorCode, invoice.errorDesc, invoice.dateTime,
+                    invoice.qrCode, invoice.codeDEFDGI, invoice.counters, invoice.nim);
+        }
+    }
+
+    /**
+     * @param maxErrors Nombre maximal d'erreurs conservées pour la réponse
+     * @param log Journal des résultats à créer, ou null
+     */
+    ImportResults(int maxErrors, Path log) throws IOException {
+        this.maxErrors = maxErrors;
+        this.log = log;
+        this.writer = log != null ? Files.newBufferedWriter(log) : null;
+    }
+
+    /**
+     * Enregistre une facture écartée (appelé depuis la lecture et depuis la soumission)
+     */
+    void rejected(String error) {
+        if (errorCount.incrementAndGet() <= maxErrors) {
+            errorSample.add(error);
+        }
+    }
+
+    /**
+     * Enregistre les factures traitées d'une tranche, dans l'ordre du fichier
+     * (appelé uniquement par l'étape de soumission)
+     */
+    void processed(List<InvoiceEntity> invoices) throws IOException {
+        processedCount.addAndGet(invoices.size());
+        if (writer == null) {
+            return;
+        }
+        for (InvoiceEntity invoice : invoices) {
+            writer.write(MAPPER.writeValueAsString(Result.of(invoice)));
+            writer.newLine();
+        }
+    }
+
+    int errorCount() {
+        return errorCount.get();
+    }
+
+    int processedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * Les premières erreurs (au plus maxErrors), null s'il n'y en a aucune
+     */
+    List<String> errorSample() {
+        synchronized (errorSample) {
+            return errorSample.isEmpty() ? null : List.copyOf(errorSample);
+        }
+    }
+
+    boolean isErrorSampleTruncated() {
+        return errorCount.get() > maxErrors;
+    }
+
+    /**
+     * Le journal des résultats, complet une fois l'objet fermé
+     */
+    Path log() {
+        return log;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Relit le journal dans l'ordre du fichier: les lignes d'un même RN sont consécutives
+     * dans le fichier importé comme dans le journal, un seul résultat est donc lu à l'avance
+     */
+    static final class Cursor implements Closeable {
+
+        private final BufferedReader reader;
+        private Result current;
+        private Result next;
+
+        Cursor(Path log) throws IOException {
+            this.reader = Files.newBufferedReader(log);
+        }
+
+        /**
+         * Résultat de la facture d'une ligne, null si la ligne a été écartée avant soumission
+         */
+        Result find(String rn) throws IOException {
+            if (rn == null) {
+                return null;
+            }
+            if (current != null && rn.equals(current.rn())) {
+                return current;
+            }
+            if (next == null) {
+                String line = reader.readLine();
+                next = line != null ? MAPPER.readValue(line, Result.class) : null;
+            }
+            if (next != null && rn.equals(next.rn())) {
+                current = next;
+                next = null;
+                return current;
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.middleware.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.middleware.dto.EntrepriseProfile;
+import org.middleware.models.InvoiceEntity;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Traitement d'un lot JSON de factures (POST /api/invoice/batch)
+ */
+@ApplicationScoped
+public class InvoiceBatchService {
+
+    private static final Logger LOG = Logger.getLogger(InvoiceBatchService.class.getName());
+
+    @Inject
+    InvoiceBatchSubmitter batchSubmitter;
+
+    /**
+     * Prépare, soumet le lot à la DGI et construit le résumé consolidé
+     *
+     * @param invoices Liste des factures reçues
+     * @param entreprise L'entreprise émettrice
+     * @param job Le travail dont la progression est mise à jour
+     * @return Le résumé du traitement (succès et échecs dans l'ordre du lot)
+     */
+    public Map<String, Object> processBatch(List<InvoiceEntity> invoices, EntrepriseProfile entreprise, InvoiceJob job) {
+        job.start(invoices.size());
+
+        // 1. Préparation du lot (transaction courte, indépendante des appels DGI)
+        List<Map<String, Object>> outcomes = new ArrayList<>(invoices.size());
+        List<InvoiceEntity> prepared = QuarkusTransaction.requiringNew().call(() -> {
+            // Factures déjà connues, chargées en une requête par tranche de RN
+            Map<String, InvoiceEntity> existingByRn = InvoiceEntity.findByRns(entreprise.nif,
+                    invoices.stream()
+                            .filter(invoice -> invoice != null && invoice.rn != null)
+                            .map(invoice -> invoice.rn)
+                            .toList());
+            List<InvoiceEntity> toSubmit = new ArrayList<>();
+            Set<String> batchRns = new HashSet<>();
+            for (InvoiceEntity invoice : invoices) {
+                outcomes.add(null);
+                try {
+                    // Validation individuelle
+                    if (invoice == null || invoice.rn == null || invoice.rn.trim().isEmpty()) {
+                        Map<String, Object> failure = new HashMap<>();
+                        failure.put("invoiceNumber", invoice != null ? invoice.rn : "null");
+                        failure.put("error", "RN manquant ou invalide");
+                        outcomes.set(outcomes.size() - 1, failure);
+                        continue;
+                    }
+
+                    // Un même RN ne peut être soumis qu'une fois par lot
+                    if (!batchRns.add(invoice.rn)) {
+                        Map<String, Object> failure = new HashMap<>();
+                        failure.put("invoiceNumber", invoice.rn);
+                        failure.put("error", "RN en double dans le lot");
+                        outcomes.set(outcomes.size() - 1, failure);
+                        continue;
+                    }
+
+                    LOG.info("Traitement facture lot: " + invoice.rn);
+
+                    // Vérifier si la facture existe déjà
+                    InvoiceEntity existingInvoice = existingByRn.get(invoice.rn);
+
+                    if (existingInvoice == null) {
+                        // Nouvelle facture
+                        invoice.id = null;
+                        invoice.email = entreprise.email;
+                        invoice.nif = entreprise.nif;
+                        invoice.isf = entreprise.isf;
+                        invoice.status = "PENDING";
+                        invoice.persist();
+                        toSubmit.add(invoice);
+                    } else if ("CONFIRMED".equals(existingInvoice.status)) {
+                        Map<String, Object> failure = new HashMap<>();
+                        failure.put("invoiceNumber", invoice.rn);
+                        failure.put("error", "Facture déjà confirmée");
+                        failure.put("uid", existingInvoice.uid);
+                        outcomes.set(outcomes.size() - 1, failure);
+                    } else if ("SUBMIT_UNKNOWN".equals(existingInvoice.status)) {
+                        Map<String, Object> failure = new HashMap<>();
+                        failure.put("invoiceNumber", invoice.rn);
+                        failure.put("error", "Soumission incertaine, vérification requise avant toute nouvelle soumission");
+                        outcomes.set(outcomes.size() - 1, failure);
+                    } else {
+                        // Nouvelle demande explicite: le budget de tentatives est réinitialisé
+                        if ("PENDING".equals(existingInvoice.status)) {
+                            existingInvoice.submitAttempts = 0;
+                        }
+                        toSubmit.add(existingInvoice);
+                    }
+
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Erreur traitement facture " + invoice.rn + ": " + e.getMessage(), e);
+                    Map<String, Object> failure = new HashMap<>();
+                    failure.put("invoiceNumber", invoice.rn);
+                    failure.put("error", "Exception: " + e.getMessage());
+                    outcomes.set(outcomes.size() - 1, failure);
+                }
+            }
+            return toSubmit;
+        });
+
+        outcomes.stream().filter(outcome -> outcome != null).forEach(outcome -> job.recordRejected());
+
+        // 2. Soumission parallèle à la DGI (ordre des résultats préservé)
+        String entrepriseKey = entreprise.nif != null ? entreprise.nif : entreprise.email;
+        Iterator<InvoiceEntity> processed = batchSubmitter
+                .submitAll(prepared, entrepriseKey, entreprise.token, job::record)
+                .iterator();
+
+        List<Map<String, Object>> successResults = new ArrayList<>();
+        List<Map<String, Object>> failureResults = new ArrayList<>();
+
+        for (Map<String, Object> outcome : outcomes) {
+            if (outcome != null) {
+                failureResults.add(outcome);
+                continue;
+            }
+
+            InvoiceEntity processedInvoice = processed.next();
+
+            // Vérifier le résultat
+            if ("CONFIRMED".equals(processedInvoice.status)) {
+                Map<String, Object> success = new HashMap<>();
+                success.put("invoiceNumber", processedInvoice.rn);
+                success.put("status", processedInvoice.status);
+                success.put("uid", processedInvoice.uid);
+                success.put("qrCode", processedInvoice.qrCode);
+                successResults.add(success);
+            } else {
+                Map<String, Object> failure = new HashMap<>();
+                failure.put("invoiceNumber", processedInvoice.rn);
+                failure.put("status", processedInvoice.status);
+                failure.put("uid", processedInvoice.uid);
+                failure.put("errorCode", processedInvoice.errorCode);
+                failure.put("errorDesc", processedInvoice.errorDesc);
+                failureResults.add(failure);
+            }
+        }
+
+        // 3. Construire la réponse consolidée
+        Map<String, Object> batchResponse = new HashMap<>();
+        batchResponse.put("totalSubmitted", invoices.size());
+        batchResponse.put("totalSuccess", successResults.size());
+        batchResponse.put("totalFailed", failureResults.size());
+        batchResponse.put("successRate", String.format("%.2f%%",
+            (successResults.size() * 100.0 / invoices.size())));
+        batchResponse.put("success", successResults);
+        batchResponse.put("failures", failureResults);
+        batchResponse.put("message", successResults.size() + " factures traitées avec succès, "
+            + failureResults.size() + " échecs");
+
+        LOG.info("=== Traitement par lot terminé: " + successResults.size() + "/" + invoices.size() + " succès ===");
+
+        return batchResponse;
+    }
+}
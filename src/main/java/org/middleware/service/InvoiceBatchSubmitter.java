@@ -0,0 +1,276 @@
+package org.middleware.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.middleware.models.InvoiceAttempt;
+import org.middleware.models.InvoiceEntity;
+import org.middleware.models.InvoiceOutbox;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Moteur de soumission parallèle des factures à la DGI (PHASE 1 + PHASE 2)
+ *
+ * Chaque facture est orchestrée sur un thread virtuel: chargement et sauvegarde
+ * dans des transactions courtes, appels DGI non bloquants entre les deux.
+ *
+ * Le parallélisme est borné globalement et par entreprise afin qu'un gros lot ne
+ * monopolise pas la DGI ni le pool de connexions.
+ *
+ * Avant la PHASE 1, la facture est réservée par compare-and-set (PENDING -> SUBMITTING)
+ * dans la limite de son budget de tentatives: deux soumissions concurrentes d'une même
+ * facture sont impossibles, et chaque phase est enregistrée dans InvoiceAttempt.
+ * La réservation est un bail (dgi.submission.lease) repris par Phase2ReconciliationSweeper
+ * si son issue n'est jamais enregistrée.
+ */
+@ApplicationScoped
+public class InvoiceBatchSubmitter {
+
+    private static final Logger LOG = Logger.getLogger(InvoiceBatchSubmitter.class.getName());
+
+    @Inject
+    DgiService dgiService;
+
+    // Budget de tentatives de PHASE 1 par facture, toutes origines confondues
+    @ConfigProperty(name = "dgi.submission.max-attempts", defaultValue = "5")
+    int maxAttempts;
+
+    // Durée de la réservation SUBMITTING, au-delà de laquelle le balayage la reprend
+    @ConfigProperty(name = "dgi.submission.lease", defaultValue = "PT5M")
+    Duration lease;
+
+    @ConfigProperty(name = "dgi.batch.max-concurrency", defaultValue = "32")
+    int maxConcurrency;
+
+    @ConfigProperty(name = "dgi.batch.max-concurrency-per-entreprise", defaultValue = "8")
+    int maxConcurrencyPerEntreprise;
+
+    // Plafond par entreprise, retiré dès qu'aucune soumission de l'entreprise n'est en cours
+    private final Map<String, EntreprisePermits> entreprisePermits = new ConcurrentHashMap<>();
+    private Semaphore globalPermits;
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        globalPermits = new Semaphore(maxConcurrency, true);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Soumet un lot de factures déjà persistées et attend la fin de toutes les soumissions
+     *
+     * @param invoices Les factures à soumettre (committées, donc détachées)
+     * @param entrepriseKey Clé de l'entreprise pour le plafond de concurrence (NIF)
+     * @param dgiToken Le token d'authentification DGI
+     * @return Les factures mises à jour, dans le même ordre que la liste d'entrée
+     */
+    public List<InvoiceEntity> submitAll(List<InvoiceEntity> invoices, String entrepriseKey, String dgiToken) {
+        return submitAll(invoices, entrepriseKey, dgiToken, invoice -> { });
+    }
+
+    /**
+     * Variante notifiant chaque facture dès la fin de sa soumission (suivi de progression)
+     *
+     * @param onProcessed Appelé depuis le thread de soumission, dans un ordre quelconque
+     */
+    public List<InvoiceEntity> submitAll(List<InvoiceEntity> invoices, String entrepriseKey, String dgiToken,
+                                         Consumer<InvoiceEntity> onProcessed) {
+        List<Submission> submissions = new ArrayList<>(invoices.size());
+        for (InvoiceEntity invoice : invoices) {
+            Submission submission = new Submission(invoice, onProcessed);
+            submission.future = executor.submit(() -> {
+                InvoiceEntity processed;
+                try {
+                    processed = submitOne(invoice, entrepriseKey, dgiToken);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    processed = markFailed(invoice, e);
+                } catch (RuntimeException e) {
+                    processed = markFailed(invoice, e);
+                }
+                submission.report(processed);
+                return processed;
+            });
+            submissions.add(submission);
+        }
+
+        List<InvoiceEntity> results = new ArrayList<>(invoices.size());
+        for (Submission submission : submissions) {
+            results.add(await(submission));
+        }
+        return results;
+    }
+
+    private InvoiceEntity submitOne(InvoiceEntity invoice, String entrepriseKey, String dgiToken) throws InterruptedException {
+        EntreprisePermits permits = entreprisePermits.compute(entrepriseKey, (key, current) -> {
+            EntreprisePermits acquired = current != null ? current : new EntreprisePermits(maxConcurrencyPerEntreprise);
+            acquired.users++;
+            return acquired;
+        });
+
+        try {
+            permits.semaphore.acquire();
+        } catch (InterruptedException e) {
+            releaseEntreprise(entrepriseKey);
+            throw e;
+        }
+        try {
+            globalPermits.acquire();
+            try {
+                // Aucune transaction n'est ouverte pendant les appels DGI
+                InvoiceEntity working = QuarkusTransaction.requiringNew().call(() -> claim(invoice.id));
+                InvoiceEntity result = working;
+
+                if ("SUBMITTING".equals(working.status)) {
+                    result = runPhase("PHASE1", working,
+                            () -> dgiService.submitInvoicePhase1Async(working, dgiToken));
+                }
+                if ("PHASE1".equals(working.status)) {
+                    result = runPhase("PHASE2", working,
+                            () -> dgiService.confirmInvoicePhase2Async(working, dgiToken));
+                }
+                return result;
+            } finally {
+                globalPermits.release();
+            }
+        } finally {
+            permits.semaphore.release();
+            releaseEntreprise(entrepriseKey);
+        }
+    }
+
+    private void releaseEntreprise(String entrepriseKey) {
+        entreprisePermits.compute(entrepriseKey, (key, current) ->
+                current == null || --current.users == 0 ? null : current);
+    }
+
+    /**
+     * Réserve la facture pour la PHASE 1 (transaction courte)
+     *
+     * Une facture déjà en PHASE1 passe directement à la confirmation. Dans les autres
+     * cas la facture est retournée telle quelle, avec la raison du refus.
+     */
+    private InvoiceEntity claim(UUID id) {
+        boolean claimed = InvoiceEntity.claimForSubmission(id, maxAttempts, lease);
+        InvoiceEntity current = InvoiceEntity.findForSubmission(id);
+        if (claimed || "PHASE1".equals(current.status)) {
+            return current;
+        }
+
+        if ("PENDING".equals(current.status)) {
+            current.errorCode = "ATTEMPT_BUDGET_EXHAUSTED";
+            current.errorDesc = "Nombre maximal de tentatives de soumission atteint (" + maxAttempts + ")";
+        } else if ("SUBMITTING".equals(current.status)) {
+            // Soumission en cours ailleurs: ne pas écraser son état
+            InvoiceEntity.getEntityManager().detach(current);
+            current.errorCode = "SUBMISSION_IN_PROGRESS";
+            current.errorDesc = "Une soumission de cette facture est déjà en cours";
+        }
+        return current;
+    }
+
+    /**
+     * Exécute une phase et enregistre son issue et la tentative (transaction courte)
+     */
+    private InvoiceEntity runPhase(String phase, InvoiceEntity working, Supplier<CompletionStage<InvoiceEntity>> call) {
+        long started = System.nanoTime();
+        InvoiceEntity processed = call.get().toCompletableFuture().join();
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        return QuarkusTransaction.requiringNew().call(() -> {
+            InvoiceAttempt.record(phase, processed, durationMs);
+            // DGI indisponible (disjoncteur ouvert) ou débit dépassé: la soumission est confiée à l'outbox
+            if ("DGI_UNAVAILABLE".equals(processed.errorCode) || "DGI_THROTTLED".equals(processed.errorCode)) {
+                InvoiceOutbox.enqueue(processed.id);
+            }
+            return InvoiceEntity.applyResult(processed);
+        });
+    }
+
+    /**
+     * Attend une soumission; en cas d'interruption, la soumission est annulée et comptée en échec
+     */
+    private InvoiceEntity await(Submission submission) {
+        try {
+            return submission.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            submission.future.cancel(true);
+            InvoiceEntity failed = markFailed(submission.invoice, e);
+            submission.report(failed);
+            return failed;
+        } catch (ExecutionException e) {
+            InvoiceEntity failed = markFailed(submission.invoice, e.getCause());
+            submission.report(failed);
+            return failed;
+        }
+    }
+
+    private InvoiceEntity markFailed(InvoiceEntity invoice, Throwable cause) {
+        LOG.log(Level.WARNING, "Erreur soumission facture " + invoice.rn + ": " + cause.getMessage(), cause);
+        invoice.errorCode = "DGI_SUBMISSION_ERROR";
+        invoice.errorDesc = "Exception: " + cause.getMessage();
+        return invoice;
+    }
+
+    /**
+     * Soumission d'une facture: onProcessed est appelé une seule fois, par la tâche ou par l'attente
+     */
+    private static final class Submission {
+        final InvoiceEntity invoice;
+        final Consumer<InvoiceEntity> onProcessed;
+        final AtomicBoolean reported = new AtomicBoolean();
+        Future<InvoiceEntity> future;
+
+        Submission(InvoiceEntity invoice, Consumer<InvoiceEntity> onProcessed) {
+            this.invoice = invoice;
+            this.onProcessed = onProcessed;
+        }
+
+        void report(InvoiceEntity processed) {
+            if (reported.compareAndSet(false, true)) {
+                onProcessed.accept(processed);
+            }
+        }
+    }
+
+    /**
+     * Plafond de concurrence d'une entreprise et nombre de soumissions qui l'utilisent
+     * (modifié uniquement dans ConcurrentHashMap.compute)
+     */
+    private static final class EntreprisePermits {
+        final Semaphore semaphore;
+        int users;
+
+        EntreprisePermits(int permits) {
+            this.semaphore = new Semaphore(permits, true);
+        }
+    }
+}
@@ -80,6 +80,11 @@ public class InvoiceEntityResponseMapper {
                 submissionData.put("total", invoice.total);
                 response.put("submission", submissionData);
             }
+        } else if ("PENDING".equals(invoice.status) || "SUBMITTING".equals(invoice.status)) {
+            // 📨 Enregistrée, soumission à la DGI en cours
+            response.put("success", true);
+            response.put("message", "⏳ Facture enregistrée. Soumission à la DGI en cours.");
+            
         } else {
             // 📋 Statut indéterminé
             response.put("success", false);
@@ -0,0 +1,176 @@
+package org.middleware.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.middleware.models.InvoiceEntity;
+
+/**
+ * Travail de soumission exécuté en arrière-plan (lot JSON ou import de fichier)
+ *
+ * Les compteurs sont mis à jour par les threads de soumission pendant que
+ * le client interroge GET /api/invoice/jobs/{id}.
+ */
+public class InvoiceJob {
+
+    private static final Logger LOG = Logger.getLogger(InvoiceJob.class.getName());
+
+    public enum Type { BATCH, EXCEL, CSV, NDJSON }
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, FAILED }
+
+    /**
+     * Fichier résultat produit à la demande, écrit directement dans la réponse
+     */
+    @FunctionalInterface
+    public interface ResultFile {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public final UUID id = UUID.randomUUID();
+    public final Type type;
+    public final String owner;
+    public final LocalDateTime createdAt = LocalDateTime.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile LocalDateTime finishedAt;
+    private volatile String errorDesc;
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger confirmed = new AtomicInteger();
+    private final AtomicInteger phase1 = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    // Résultat final: réponse JSON et/ou fichier Excel mis à jour
+    private volatile Object payload;
+    private volatile ResultFile resultFile;
+
+    // Fichiers temporaires (import, résultat) supprimés à l'expiration du travail
+    private final List<Path> files = new CopyOnWriteArrayList<>();
+
+    public InvoiceJob(Type type, String owner) {
+        this.type = type;
+        this.owner = owner;
+    }
+
+    public void start(int totalItems) {
+        total.set(totalItems);
+        status = Status.RUNNING;
+    }
+
+    /**
+     * Ajoute des éléments au total, quand il n'est connu qu'au fil de la lecture
+     */
+    public void expand(int items) {
+        total.addAndGet(items);
+    }
+
+    /**
+     * Enregistre le résultat de soumission d'une facture
+     */
+    public void record(InvoiceEntity invoice) {
+        submitted.incrementAndGet();
+        if ("CONFIRMED".equals(invoice.status)) {
+            confirmed.incrementAndGet();
+        } else if ("PHASE1".equals(invoice.status) && invoice.errorCode == null) {
+            phase1.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Enregistre un élément rejeté avant soumission (validation, doublon...)
+     */
+    public void recordRejected() {
+        failed.incrementAndGet();
+    }
+
+    public void complete(Object payload, ResultFile resultFile) {
+        this.payload = payload;
+        this.resultFile = resultFile;
+        this.finishedAt = LocalDateTime.now();
+        this.status = Status.COMPLETED;
+    }
+
+    public void fail(String errorDesc) {
+        this.errorDesc = errorDesc;
+        this.finishedAt = LocalDateTime.now();
+        this.status = Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public ResultFile getResultFile() {
+        return resultFile;
+    }
+
+    /**
+     * Confie un fichier temporaire au travail
+     */
+    public Path own(Path file) {
+        files.add(file);
+        return file;
+    }
+
+    /**
+     * Supprime les fichiers temporaires du travail
+     */
+    public void releaseFiles() {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warning("Suppression impossible du fichier temporaire " + file + ": " + e.getMessage());
+            }
+        }
+        files.clear();
+    }
+
+    /**
+     * Vue JSON de l'état du travail
+     */
+    public Map<String, Object> toStatus() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("jobId", id);
+        response.put("type", type);
+        response.put("status", status);
+        response.put("createdAt", createdAt);
+        response.put("finishedAt", finishedAt);
+
+        Map<String, Object> progress = new HashMap<>();
+        progress.put("total", total.get());
+        progress.put("submitted", submitted.get());
+        progress.put("confirmed", confirmed.get());
+        progress.put("phase1", phase1.get());
+        progress.put("failed", failed.get());
+        response.put("progress", progress);
+
+        if (status == Status.COMPLETED) {
+            response.put("result", payload);
+            if (resultFile != null) {
+                response.put("resultFileUrl", "/api/invoice/jobs/" + id + "/file");
+            }
+        } else if (status == Status.FAILED) {
+            response.put("errorDesc", errorDesc);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,176 @@
+package org.middleware.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Registre et exécuteur des travaux de soumission en arrière-plan
+ *
+ * Les travaux sont conservés en mémoire jusqu'à expiration de la durée de
+ * rétention après leur fin (purge planifiée, avec leurs fichiers temporaires).
+ * Au plus 'queue-capacity' travaux attendent un thread: au-delà, submit lève
+ * RejectedExecutionException (réponse 503).
+ *
+ * Les travaux ne survivent pas à un redémarrage: les fichiers temporaires laissés
+ * par le processus précédent sont supprimés au démarrage.
+ *
+ * Déploiement: le registre et les fichiers résultats sont propres au processus.
+ * Derrière un répartiteur de charge, le suivi (GET /api/invoice/jobs/{id} et
+ * jobs/{id}/file) exige des sessions persistantes (affinité sur l'en-tête
+ * Authorization ou un cookie) vers l'instance qui a reçu le travail, sinon il
+ * répond 404. Chaque instance doit aussi avoir son propre répertoire temporaire
+ * (java.io.tmpdir): la purge du démarrage supprime tous les fichiers dgi-import-*
+ * et dgi-result-* qu'elle y trouve, y compris ceux d'une autre instance.
+ * L'outbox et les balayages planifiés, eux, fonctionnent sur plusieurs instances.
+ */
+@Startup
+@ApplicationScoped
+public class InvoiceJobService {
+
+    private static final Logger LOG = Logger.getLogger(InvoiceJobService.class.getName());
+
+    @ConfigProperty(name = "dgi.jobs.max-concurrent", defaultValue = "4")
+    int maxConcurrentJobs;
+
+    @ConfigProperty(name = "dgi.jobs.queue-capacity", defaultValue = "100")
+    int queueCapacity;
+
+    @ConfigProperty(name = "dgi.jobs.retention", defaultValue = "PT1H")
+    Duration retention;
+
+    // Préfixes des fichiers temporaires des imports (ExcelImportService)
+    private static final String[] TEMP_FILE_PREFIXES = {"dgi-import-", "dgi-result-"};
+
+    /**
+     * Traitement exécuté par un travail
+     */
+    @FunctionalInterface
+    public interface Work {
+        void run(InvoiceJob job) throws Exception;
+    }
+
+    private final Map<UUID, InvoiceJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new ThreadPoolExecutor.AbortPolicy());
+        deleteOrphanFiles();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Enregistre un travail et planifie son exécution
+     *
+     * @param job Le travail à exécuter
+     * @param work Le traitement, responsable d'appeler job.complete(...)
+     * @return Le travail enregistré (statut QUEUED)
+     * @throws RejectedExecutionException si la file des travaux est pleine (fichiers du travail supprimés)
+     */
+    public InvoiceJob submit(InvoiceJob job, Work work) {
+        jobs.put(job.id, job);
+
+        try {
+            executor.execute(() -> {
+                try {
+                    work.run(job);
+                    if (!job.isFinished()) {
+                        job.complete(null, null);
+                    }
+                } catch (Exception e) {
+                    LOG.log(Level.SEVERE, "Échec du travail " + job.id + ": " + e.getMessage(), e);
+                    job.fail(e.getMessage());
+                }
+                // Sans fichier résultat, les fichiers temporaires ne servent plus
+                if (job.getResultFile() == null) {
+                    job.releaseFiles();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            job.releaseFiles();
+            LOG.warning("File des travaux pleine (" + queueCapacity + "), travail " + job.type + " refusé");
+            throw e;
+        }
+
+        LOG.info("Travail " + job.type + " planifié: " + job.id);
+        return job;
+    }
+
+    /**
+     * Retourne un travail appartenant à l'utilisateur, ou null
+     */
+    public InvoiceJob find(UUID id, String owner) {
+        InvoiceJob job = jobs.get(id);
+        if (job == null || !job.owner.equals(owner)) {
+            return null;
+        }
+        return job;
+    }
+
+    @Scheduled(every = "1m", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purgeExpired() {
+        LocalDateTime limit = LocalDateTime.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (job.isFinished() && job.getFinishedAt().isBefore(limit)) {
+                job.releaseFiles();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Supprime les fichiers temporaires des travaux d'une exécution précédente
+     */
+    private void deleteOrphanFiles() {
+        Path tempDir = Path.of(System.getProperty("java.io.tmpdir"));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            files.filter(InvoiceJobService::isJobFile).forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOG.warning("Fichier temporaire non supprimé: " + file + " (" + e.getMessage() + ")");
+                }
+            });
+        } catch (IOException e) {
+            LOG.warning("Nettoyage des fichiers temporaires impossible: " + e.getMessage());
+        }
+    }
+
+    private static boolean isJobFile(Path file) {
+        String name = file.getFileName().toString();
+        for (String prefix : TEMP_FILE_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,202 @@
+package org.middleware.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.LockOptions;
+import org.middleware.models.Entreprise;
+import org.middleware.models.InvoiceEntity;
+import org.middleware.models.InvoiceOutbox;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.LockModeType;
+
+/**
+ * Traite les demandes de soumission de l'outbox (PHASE 1 + PHASE 2)
+ *
+ * Les lignes sont réservées avec SELECT ... FOR UPDATE SKIP LOCKED dans une
+ * transaction courte, ce qui permet à plusieurs instances de se partager le
+ * travail. Une ligne réservée dont le bail expire est reprise par une autre instance.
+ */
+@ApplicationScoped
+public class InvoiceOutboxDispatcher {
+
+    private static final Logger LOG = Logger.getLogger(InvoiceOutboxDispatcher.class.getName());
+
+    // Erreurs techniques (réseau, timeout), débit DGI dépassé ou soumission concurrente en cours, pour lesquelles
+    // une nouvelle tentative a du sens
+    private static final Set<String> RETRYABLE_ERRORS = Set.of(
+            "DGI_PHASE1_ERROR", "DGI_PHASE2_ERROR", "DGI_SUBMISSION_ERROR", "DGI_UNAVAILABLE",
+            "DGI_THROTTLED", "SUBMISSION_IN_PROGRESS");
+
+    @Inject
+    InvoiceBatchSubmitter batchSubmitter;
+
+    @ConfigProperty(name = "dgi.outbox.batch-size", defaultValue = "50")
+    int batchSize;
+
+    @ConfigProperty(name = "dgi.outbox.lease", defaultValue = "PT5M")
+    Duration lease;
+
+    @ConfigProperty(name = "dgi.outbox.max-attempts", defaultValue = "5")
+    int maxAttempts;
+
+    @ConfigProperty(name = "dgi.outbox.retry-delay", defaultValue = "PT30S")
+    Duration retryDelay;
+
+    @ConfigProperty(name = "dgi.outbox.max-retry-delay", defaultValue = "PT30M")
+    Duration maxRetryDelay;
+
+    private ExecutorService executor;
+
+    private record Claim(UUID outboxId, InvoiceEntity invoice, String entrepriseKey, String dgiToken) { }
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Scheduled(every = "${dgi.outbox.poll-interval:2s}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void dispatch() {
+        List<Claim> claims = QuarkusTransaction.requiringNew().call(this::claim);
+        if (claims.isEmpty()) {
+            return;
+        }
+
+        LOG.info("Outbox: " + claims.size() + " soumission(s) réservée(s)");
+
+        // Un groupe par entreprise (token DGI et plafond de concurrence propres), traités en parallèle
+        Map<String, List<Claim>> byEntreprise = claims.stream()
+                .collect(Collectors.groupingBy(Claim::entrepriseKey, LinkedHashMap::new, Collectors.toList()));
+
+        CompletableFuture.allOf(byEntreprise.values().stream()
+                        .map(group -> CompletableFuture.runAsync(() -> process(group), executor))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+    }
+
+    /**
+     * Réserve un lot de lignes à traiter (transaction courte)
+     */
+    List<Claim> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        List<InvoiceOutbox> rows = InvoiceOutbox
+                .find("(status = ?1 and nextAttemptAt <= ?2) or (status = ?3 and lockedUntil < ?2) order by nextAttemptAt",
+                        "PENDING", now, "IN_PROGRESS")
+                .withLock(LockModeType.PESSIMISTIC_WRITE)
+                .withHint("jakarta.persistence.lock.timeout", LockOptions.SKIP_LOCKED)
+                .page(0, batchSize)
+                .list();
+
+        List<Claim> claims = new ArrayList<>();
+        Map<String, Entreprise> entreprises = new HashMap<>();
+
+        for (InvoiceOutbox row : rows) {
+            row.status = "IN_PROGRESS";
+            row.lockedUntil = now.plus(lease);
+            row.attempts++;
+
+            InvoiceEntity invoice = InvoiceEntity.findById(row.invoiceId);
+            if (invoice == null || "CONFIRMED".equals(invoice.status)) {
+                row.status = "DONE";
+                row.lockedUntil = null;
+                continue;
+            }
+
+            Entreprise entreprise = entreprises.computeIfAbsent(invoice.email,
+                    email -> Entreprise.find("email", email).firstResult());
+            if (entreprise == null) {
+                row.status = "FAILED";
+                row.lockedUntil = null;
+                row.lastError = "Aucune entreprise trouvée pour " + invoice.email;
+                continue;
+            }
+
+            String entrepriseKey = entreprise.nif != null ? entreprise.nif : entreprise.email;
+            claims.add(new Claim(row.id, invoice, entrepriseKey, entreprise.token));
+        }
+        return claims;
+    }
+
+    private void process(List<Claim> group) {
+        try {
+            List<InvoiceEntity> invoices = group.stream().map(Claim::invoice).toList();
+            List<InvoiceEntity> results = batchSubmitter.submitAll(invoices,
+                    group.get(0).entrepriseKey(), group.get(0).dgiToken());
+
+            for (int i = 0; i < group.size(); i++) {
+                UUID outboxId = group.get(i).outboxId();
+                InvoiceEntity result = results.get(i);
+                QuarkusTransaction.requiringNew().run(() -> complete(outboxId, result));
+            }
+        } catch (Exception e) {
+            // Les lignes restent IN_PROGRESS et seront reprises à l'expiration du bail
+            LOG.log(Level.SEVERE, "Outbox: erreur de traitement du lot: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Enregistre l'issue d'une soumission: terminée, replanifiée ou abandonnée
+     */
+    private void complete(UUID outboxId, InvoiceEntity result) {
+        InvoiceOutbox row = InvoiceOutbox.findById(outboxId);
+        if (row == null) {
+            return;
+        }
+        row.lockedUntil = null;
+
+        if (result.errorCode != null && RETRYABLE_ERRORS.contains(result.errorCode)) {
+            row.lastError = result.errorDesc;
+            if (row.attempts >= maxAttempts) {
+                LOG.warning("Outbox: abandon de la facture " + result.rn + " après " + row.attempts + " tentatives");
+                row.status = "FAILED";
+            } else {
+                row.status = "PENDING";
+                row.nextAttemptAt = LocalDateTime.now().plus(backoff(row.attempts));
+            }
+            return;
+        }
+
+        // Confirmée, ou rejet métier de la DGI (enregistré sur la facture)
+        row.status = "DONE";
+        row.lastError = result.errorCode != null ? result.errorCode + ": " + result.errorDesc : null;
+    }
+
+    /**
+     * Délai exponentiel plafonné, avec une gigue de ±20 % pour étaler les reprises
+     * de toutes les factures différées pendant une même panne
+     */
+    private Duration backoff(int attempts) {
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(attempts - 1, 16));
+        if (delay.compareTo(maxRetryDelay) > 0) {
+            delay = maxRetryDelay;
+        }
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (delay.toMillis() * jitter));
+    }
+}
@@ -0,0 +1,108 @@
+package org.middleware.service;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+/**
+ * Ligne d'un fichier d'import de factures, indépendante du format source
+ *
+ * Les valeurs sont les textes des cellules indexés par colonne (A = 0), déjà
+ * normalisés: espaces retirés, cellule vide = null, dates au format ISO et
+ * nombres sans notation scientifique.
+ */
+public class InvoiceRow {
+
+    // Colonnes A(0) à W(22) du modèle d'import
+    public static final int COLUMNS = 23;
+
+    // Nom de chaque colonne, utilisé comme clé dans les formats nommés (JSON Lines)
+    public static final String[] FIELD_NAMES = {
+            "rn", "type", "clientNif", "clientName", "clientType",
+            "itemCode", "itemName", "itemPrice", "itemQuantity", "itemTaxGroup",
+            "itemArticleType", "unitPriceMode", "currency", "unit", "specificTaxAmount",
+            "taxSpecificValue", "mode", "reference", "referenceType", "referenceDesc",
+            "curCode", "curDate", "curRate"
+    };
+
+    // Colonnes numériques: prix, quantité, taxe spécifique, taux
+    public static final Set<Integer> NUMERIC_COLUMNS = Set.of(7, 8, 14, 22);
+
+    private final int rowNum;
+    private final String[] values;
+    private final String error;
+
+    /**
+     * @param rowNum Numéro de la ligne dans le fichier (1 = en-tête)
+     * @param values Valeurs par colonne, null pour une cellule vide
+     */
+    public InvoiceRow(int rowNum, String[] values) {
+        this(rowNum, values, null);
+    }
+
+    private InvoiceRow(int rowNum, String[] values, String error) {
+        this.rowNum = rowNum;
+        this.values = values;
+        this.error = error;
+    }
+
+    /**
+     * Ligne illisible dans le fichier source (JSON invalide...), signalée comme erreur de ligne
+     */
+    public static InvoiceRow invalid(int rowNum, String error) {
+        return new InvoiceRow(rowNum, new String[COLUMNS], error);
+    }
+
+    /**
+     * Normalise une valeur lue: espaces retirés, valeur vide = null
+     */
+    public static String normalize(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * Erreur de lecture de la ligne, null si elle a pu être lue
+     */
+    public String getError() {
+        return error;
+    }
+
+    public String get(int column) {
+        return column < values.length ? values[column] : null;
+    }
+
+    public boolean isEmpty(int column) {
+        return get(column) == null;
+    }
+
+    /**
+     * Valeur numérique de la colonne, ZERO si elle est vide ou invalide
+     */
+    public BigDecimal getDecimal(int column) {
+        String value = get(column);
+        if (value == null) {
+            return BigDecimal.ZERO;
+        }
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    public boolean isBlank() {
+        for (String value : values) {
+            if (value != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -4,24 +4,35 @@ package org.middleware.service;
 
 import io.smallrye.jwt.build.Jwt;
 import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.middleware.models.Entreprise;
 
-import java.util.Arrays;
-import java.util.HashSet;
+import java.time.Duration;
 import java.util.Set;
+import java.util.UUID;
 
 @ApplicationScoped
 public class JwtService {
 
+    // Jetons d'accès courts: la révocation (TokenDenylist) n'a à couvrir que cette durée
+    @ConfigProperty(name = "dgi.auth.access-token-ttl", defaultValue = "PT15M")
+    Duration accessTokenTtl;
+
     public String generateJWT(Entreprise entreprise) {
         return Jwt.issuer("bridge")
             .subject(entreprise.id.toString())
             .groups(Set.of(entreprise.role))
-            //.groups(new HashSet<>(Arrays.asList("USER", "ADMIN")))
             .claim("email", entreprise.email)
-            .expiresIn(31536000) // 1 an
+            // Identifiant du jeton, pour la révocation
+            .claim("jti", UUID.randomUUID().toString())
+            .expiresIn(accessTokenTtl)
         .sign();
-        //31536000
     }
-    //
+
+    /**
+     * Durée de validité des jetons d'accès, en secondes
+     */
+    public long accessTokenTtlSeconds() {
+        return accessTokenTtl.toSeconds();
+    }
 }
@@ -0,0 +1,74 @@
+package org.middleware.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Lecture en flux d'un fichier JSON Lines de factures: un objet JSON par ligne
+ *
+ * Les clés sont les noms des colonnes du modèle d'import (InvoiceRow.FIELD_NAMES:
+ * rn, type, clientNif, itemPrice, curRate...). Une ligne illisible est transmise
+ * comme ligne invalide, signalée dans le rapport d'import sans arrêter la lecture.
+ */
+@ApplicationScoped
+public class NdjsonRowReader {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Lit les objets du fichier (les lignes vides sont ignorées)
+     *
+     * @param file Le fichier JSON Lines, encodé en UTF-8
+     * @param consumer Appelé pour chaque ligne, dans l'ordre du fichier
+     */
+    public void read(File file, Consumer<InvoiceRow> consumer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNum = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNum++;
+                if (lineNum == 1 && line.startsWith("\uFEFF")) {
+                    line = line.substring(1);
+                }
+                if (line.isBlank()) {
+                    continue;
+                }
+                consumer.accept(parse(lineNum, line));
+            }
+        }
+    }
+
+    private InvoiceRow parse(int lineNum, String line) {
+        JsonNode node;
+        try {
+            node = mapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            return InvoiceRow.invalid(lineNum, "JSON invalide: " + e.getOriginalMessage());
+        }
+        if (!node.isObject()) {
+            return InvoiceRow.invalid(lineNum, "Un objet JSON est attendu sur chaque ligne");
+        }
+
+        String[] values = new String[InvoiceRow.COLUMNS];
+        for (int column = 0; column < InvoiceRow.COLUMNS; column++) {
+            JsonNode value = node.get(InvoiceRow.FIELD_NAMES[column]);
+            if (value == null || value.isNull()) {
+                continue;
+            }
+            // Nombres en notation décimale simple, comme les cellules Excel
+            values[column] = InvoiceRow.normalize(value.isNumber()
+                    ? value.decimalValue().toPlainString() : value.asText());
+        }
+        return new InvoiceRow(lineNum, values);
+    }
+}
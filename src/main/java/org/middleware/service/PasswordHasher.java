@@ -0,0 +1,143 @@
+package org.middleware.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.mindrot.jbcrypt.BCrypt;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Hachage et vérification BCrypt des mots de passe sur un pool dédié et borné
+ *
+ * Chaque opération coûte des dizaines à des centaines de millisecondes de calcul:
+ * elles sont exécutées par 'hash-threads' threads avec au plus 'hash-queue' opérations
+ * en attente. Au-delà, RejectedExecutionException est levée (réponse 503) plutôt que
+ * d'occuper les threads de travail utilisés par la soumission des factures.
+ * Les connexions simultanées sont en plus plafonnées par 'login-max-concurrent'.
+ */
+@ApplicationScoped
+public class PasswordHasher {
+
+    private static final Logger LOG = Logger.getLogger(PasswordHasher.class.getName());
+
+    // Facteur de coût BCrypt des nouveaux hachages (2^cost itérations)
+    @ConfigProperty(name = "dgi.auth.bcrypt-cost", defaultValue = "10")
+    int cost;
+
+    // 0 = moitié des processeurs (au moins 1)
+    @ConfigProperty(name = "dgi.auth.hash-threads", defaultValue = "0")
+    int threads;
+
+    @ConfigProperty(name = "dgi.auth.hash-queue", defaultValue = "64")
+    int queueCapacity;
+
+    @ConfigProperty(name = "dgi.auth.login-max-concurrent", defaultValue = "32")
+    int loginMaxConcurrent;
+
+    private ThreadPoolExecutor executor;
+    private Semaphore loginPermits;
+
+    @PostConstruct
+    void init() {
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                task -> {
+                    Thread thread = new Thread(task, "password-hasher-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        loginPermits = new Semaphore(Math.max(1, loginMaxConcurrent));
+        LOG.info("Hachage des mots de passe: " + size + " threads, coût BCrypt " + cost);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Hache un mot de passe avec le coût configuré
+     *
+     * @throws RejectedExecutionException si le pool de hachage est saturé
+     */
+    public String hash(String password) {
+        return run(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)));
+    }
+
+    /**
+     * Vérifie un mot de passe; un hachage absent ou illisible ne correspond à aucun mot de passe
+     *
+     * @throws RejectedExecutionException si le pool de hachage est saturé
+     */
+    public boolean verify(String password, String hashed) {
+        if (password == null || hashed == null) {
+            return false;
+        }
+        return run(() -> {
+            try {
+                return BCrypt.checkpw(password, hashed);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Vrai si le hachage a été produit avec un autre coût que le coût configuré
+     */
+    public boolean needsRehash(String hashed) {
+        // Format $2a$10$...: le coût est aux positions 4 et 5
+        if (hashed == null || hashed.length() < 7 || hashed.charAt(0) != '$' || hashed.charAt(6) != '$') {
+            return true;
+        }
+        try {
+            return Integer.parseInt(hashed.substring(4, 6)) != cost;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Réserve une place de connexion, sans attendre
+     *
+     * @return false si 'login-max-concurrent' connexions sont déjà en cours
+     */
+    public boolean tryEnterLogin() {
+        return loginPermits.tryAcquire();
+    }
+
+    /**
+     * Libère la place obtenue par tryEnterLogin
+     */
+    public void exitLogin() {
+        loginPermits.release();
+    }
+
+    private <T> T run(Callable<T> task) {
+        try {
+            return executor.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Hachage du mot de passe interrompu", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
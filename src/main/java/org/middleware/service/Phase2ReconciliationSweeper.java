@@ -0,0 +1,177 @@
+package org.middleware.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.middleware.models.Entreprise;
+import org.middleware.models.InvoiceAttempt;
+import org.middleware.models.InvoiceEntity;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Balayage périodique des factures bloquées en PHASE1 ou en SUBMITTING
+ *
+ * Après une indisponibilité de la DGI, les confirmations échouées laissent des
+ * factures soumises mais non confirmées. Ce balayage les reconfirme par lots,
+ * avec une concurrence bornée, et abandonne celles qui dépassent le nombre
+ * maximal de tentatives.
+ *
+ * Les réservations SUBMITTING dont le bail a expiré (issue de la PHASE 1 jamais
+ * enregistrée) passent en SUBMIT_UNKNOWN, à résoudre par l'administration.
+ */
+@ApplicationScoped
+public class Phase2ReconciliationSweeper {
+
+    private static final Logger LOG = Logger.getLogger(Phase2ReconciliationSweeper.class.getName());
+
+    @Inject
+    DgiService dgiService;
+
+    @ConfigProperty(name = "dgi.sweeper.min-age", defaultValue = "PT15M")
+    Duration minAge;
+
+    @ConfigProperty(name = "dgi.sweeper.batch-size", defaultValue = "100")
+    int batchSize;
+
+    @ConfigProperty(name = "dgi.sweeper.concurrency", defaultValue = "8")
+    int concurrency;
+
+    @ConfigProperty(name = "dgi.sweeper.max-attempts", defaultValue = "10")
+    int maxAttempts;
+
+    @ConfigProperty(name = "dgi.submission.lease", defaultValue = "PT5M")
+    Duration submissionLease;
+
+    private final AtomicLong attempted = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong leasesExpired = new AtomicLong();
+    private volatile LocalDateTime lastRun;
+
+    private record Candidate(InvoiceEntity invoice, String dgiToken) { }
+
+    private record Confirmation(InvoiceEntity invoice, long durationMs) { }
+
+    @Scheduled(every = "${dgi.sweeper.interval:5m}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void sweep() {
+        lastRun = LocalDateTime.now();
+
+        List<Candidate> candidates = QuarkusTransaction.requiringNew().call(this::claim);
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        LOG.info("Réconciliation PHASE 2: " + candidates.size() + " facture(s) à confirmer");
+
+        // Confirmations non bloquantes, au plus 'concurrency' en vol
+        Semaphore permits = new Semaphore(concurrency);
+        List<CompletableFuture<Confirmation>> confirmations = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            permits.acquireUninterruptibly();
+            long started = System.nanoTime();
+            confirmations.add(dgiService.confirmInvoicePhase2Async(candidate.invoice(), candidate.dgiToken())
+                    .toCompletableFuture()
+                    .thenApply(result -> new Confirmation(result,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)))
+                    .whenComplete((result, error) -> permits.release()));
+        }
+
+        for (CompletableFuture<Confirmation> confirmation : confirmations) {
+            Confirmation done = confirmation.join();
+            InvoiceEntity result = done.invoice();
+            try {
+                QuarkusTransaction.requiringNew().run(() -> record(result, done.durationMs()));
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Réconciliation PHASE 2: échec d'enregistrement pour " + result.rn, e);
+            }
+        }
+    }
+
+    /**
+     * Reprend les réservations SUBMITTING expirées (transaction courte)
+     */
+    @Scheduled(every = "${dgi.sweeper.lease-interval:1m}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void expireSubmissionLeases() {
+        LocalDateTime now = LocalDateTime.now();
+        int expired = QuarkusTransaction.requiringNew().call(() ->
+                InvoiceEntity.expireSubmissionLeases(now, now.minus(submissionLease)));
+        if (expired > 0) {
+            leasesExpired.addAndGet(expired);
+            LOG.warning("Réservation expirée: " + expired + " facture(s) passée(s) en SUBMIT_UNKNOWN");
+        }
+    }
+
+    /**
+     * Réserve les factures à reconfirmer (transaction courte)
+     *
+     * L'incrément du compteur de tentatives met aussi à jour updatedAt, ce qui
+     * écarte ces factures des balayages suivants pendant au moins minAge.
+     */
+    List<Candidate> claim() {
+        List<InvoiceEntity> stuck = InvoiceEntity.findStuckInPhase1(
+                LocalDateTime.now().minus(minAge), maxAttempts, batchSize);
+
+        List<Candidate> candidates = new ArrayList<>();
+        Map<String, Entreprise> entreprises = new HashMap<>();
+
+        for (InvoiceEntity invoice : stuck) {
+            Entreprise entreprise = entreprises.computeIfAbsent(invoice.email,
+                    email -> Entreprise.find("email", email).firstResult());
+            if (entreprise == null) {
+                continue;
+            }
+
+            invoice.confirmAttempts = (invoice.confirmAttempts != null ? invoice.confirmAttempts : 0) + 1;
+            attempted.incrementAndGet();
+            candidates.add(new Candidate(InvoiceEntity.findForSubmission(invoice.id), entreprise.token));
+        }
+        return candidates;
+    }
+
+    private void record(InvoiceEntity result, long durationMs) {
+        InvoiceAttempt.record("PHASE2", result, durationMs);
+
+        if ("CONFIRMED".equals(result.status)) {
+            recovered.incrementAndGet();
+            LOG.info("Réconciliation PHASE 2: facture " + result.rn + " confirmée");
+        } else if (result.confirmAttempts != null && result.confirmAttempts >= maxAttempts) {
+            abandoned.incrementAndGet();
+            LOG.warning("Réconciliation PHASE 2: abandon de la facture " + result.rn
+                    + " après " + result.confirmAttempts + " tentatives");
+            result.errorDesc = "Confirmation abandonnée après " + result.confirmAttempts
+                    + " tentatives. Dernière erreur: " + result.errorCode + " - " + result.errorDesc;
+            result.errorCode = "PHASE2_ABANDONED";
+        }
+
+        // Jamais de retour en arrière si la facture a été confirmée entre-temps par une autre voie
+        InvoiceEntity.applyResult(result);
+    }
+
+    /**
+     * Compteurs exposés par /api/dgi/metrics
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("attempted", attempted.get());
+        metrics.put("recovered", recovered.get());
+        metrics.put("abandoned", abandoned.get());
+        metrics.put("leasesExpired", leasesExpired.get());
+        metrics.put("lastRun", lastRun);
+        return metrics;
+    }
+}
@@ -0,0 +1,82 @@
+package org.middleware.service;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+
+/**
+ * Jetons d'accès révoqués avant leur expiration, en mémoire
+ *
+ * Deux listes: les identifiants de jetons (jti) révoqués un par un (déconnexion), et
+ * pour une entreprise coupée, la date avant laquelle tous ses jetons sont refusés.
+ * Les jetons d'accès étant courts, une entrée n'est utile que jusqu'à leur expiration:
+ * la vérification à chaque requête reste une lecture de table de hachage, sans base.
+ * Les jetons de rafraîchissement sont révoqués en base (RefreshToken): après un
+ * redémarrage, une entreprise coupée ne peut pas obtenir de nouveau jeton d'accès.
+ */
+@ApplicationScoped
+public class TokenDenylist {
+
+    @ConfigProperty(name = "dgi.auth.access-token-ttl", defaultValue = "PT15M")
+    Duration accessTokenTtl;
+
+    // Jetons sans jti (anciens jetons d'un an): refusés sauf pendant une migration
+    @ConfigProperty(name = "dgi.auth.accept-legacy-tokens", defaultValue = "false")
+    boolean acceptLegacyTokens;
+
+    // jti -> expiration du jeton (secondes epoch)
+    private final ConcurrentHashMap<String, Long> revokedTokens = new ConcurrentHashMap<>();
+
+    // sujet (id de l'entreprise) -> jetons émis avant cette date refusés (secondes epoch)
+    private final ConcurrentHashMap<String, Long> subjectCutoffs = new ConcurrentHashMap<>();
+
+    /**
+     * Vrai si le jeton a été révoqué, ou si c'est un ancien jeton sans identifiant
+     */
+    public boolean isRevoked(JsonWebToken token) {
+        String jti = token.getTokenID();
+        if (jti == null) {
+            return !acceptLegacyTokens;
+        }
+        if (revokedTokens.containsKey(jti)) {
+            return true;
+        }
+        Long cutoff = token.getSubject() != null ? subjectCutoffs.get(token.getSubject()) : null;
+        // iat est à la seconde: un jeton émis dans la seconde de la révocation (reconnexion
+        // immédiate) reste valide, sinon il serait refusé dès son émission
+        return cutoff != null && token.getIssuedAtTime() < cutoff;
+    }
+
+    /**
+     * Révoque un jeton jusqu'à son expiration
+     */
+    public void revoke(JsonWebToken token) {
+        if (token.getTokenID() != null) {
+            revokedTokens.put(token.getTokenID(), token.getExpirationTime());
+        }
+    }
+
+    /**
+     * Refuse tous les jetons d'accès déjà émis pour une entreprise
+     */
+    public void revokeSubject(UUID entrepriseId) {
+        subjectCutoffs.put(entrepriseId.toString(), System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * Retire les entrées devenues inutiles: jetons expirés de toute façon
+     */
+    @Scheduled(every = "1m", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void purge() {
+        long now = System.currentTimeMillis() / 1000;
+        revokedTokens.values().removeIf(expiresAt -> expiresAt < now);
+        long oldestValid = now - accessTokenTtl.toSeconds();
+        subjectCutoffs.values().removeIf(cutoff -> cutoff < oldestValid);
+    }
+}
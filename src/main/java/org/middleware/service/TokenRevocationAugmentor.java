@@ -0,0 +1,29 @@
+package org.middleware.service;
+
+import org.eclipse.microprofile.jwt.JsonWebToken;
+
+import io.quarkus.security.AuthenticationFailedException;
+import io.quarkus.security.identity.AuthenticationRequestContext;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.quarkus.security.identity.SecurityIdentityAugmentor;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Refuse les JWT révoqués (TokenDenylist) à chaque authentification, sans accès à la base
+ */
+@ApplicationScoped
+public class TokenRevocationAugmentor implements SecurityIdentityAugmentor {
+
+    @Inject
+    TokenDenylist denylist;
+
+    @Override
+    public Uni<SecurityIdentity> augment(SecurityIdentity identity, AuthenticationRequestContext context) {
+        if (identity.getPrincipal() instanceof JsonWebToken token && denylist.isRevoked(token)) {
+            return Uni.createFrom().failure(new AuthenticationFailedException("Jeton révoqué"));
+        }
+        return Uni.createFrom().item(identity);
+    }
+}
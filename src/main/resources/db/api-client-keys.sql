@@ -0,0 +1,51 @@
+-- Clés API: remplacement de la clé en clair par son empreinte SHA-256 et
+-- rattachement de chaque client à son entreprise - PostgreSQL
+--
+-- Script idempotent, à exécuter AVANT le déploiement sur une base existante:
+--   psql "$JDBC_DATABASE_URL" -v ON_ERROR_STOP=1 --single-transaction -f api-client-keys.sql
+-- Les clés déjà distribuées restent valides: seule leur empreinte est conservée.
+-- Les noms correspondent à ApiClient (colonnes et @UniqueConstraint).
+
+-- 1. Nouvelles colonnes
+ALTER TABLE api_clients ADD COLUMN IF NOT EXISTS api_key_hash varchar(64);
+ALTER TABLE api_clients ADD COLUMN IF NOT EXISTS key_prefix varchar(16);
+
+-- 2. Empreinte et préfixe des clés existantes, puis suppression des clés en clair
+--    La colonne en clair dépend de la stratégie de nommage (apikey ou api_key): elle
+--    est cherchée dans le schéma, et le script échoue si des clés restent sans empreinte.
+--    Préfixe des anciennes clés: lg_ + 8 premiers caractères (même forme que bk_xxxxxxxx).
+DO $$
+DECLARE
+    plain_column text;
+BEGIN
+    SELECT column_name INTO plain_column
+    FROM information_schema.columns
+    WHERE table_schema = current_schema() AND table_name = 'api_clients'
+      AND column_name IN ('apikey', 'api_key')
+    LIMIT 1;
+
+    IF plain_column IS NOT NULL THEN
+        EXECUTE format(
+            'UPDATE api_clients SET api_key_hash = encode(sha256(convert_to(%1$I, ''UTF8'')), ''hex''), '
+            || 'key_prefix = ''lg_'' || left(%1$I, 8) WHERE api_key_hash IS NULL', plain_column);
+        EXECUTE format('ALTER TABLE api_clients DROP COLUMN %I', plain_column);
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM api_clients WHERE api_key_hash IS NULL) THEN
+        RAISE EXCEPTION 'Clés API sans empreinte et aucune colonne en clair (apikey, api_key) trouvée dans api_clients';
+    END IF;
+END $$;
+
+-- 3. Recherche par empreinte: un seul accès à l'index
+ALTER TABLE api_clients ALTER COLUMN api_key_hash SET NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS uk_api_clients_key_hash ON api_clients (api_key_hash);
+
+-- 4. Entreprise du client: renseignée quand son NIF ne désigne qu'une entreprise.
+--    Les clients restants (NIF partagé ou inconnu) sont listés: leur clé est refusée
+--    jusqu'à ce que entreprise_id soit renseigné ou la clé recréée avec entrepriseId.
+ALTER TABLE api_clients ADD COLUMN IF NOT EXISTS entreprise_id uuid;
+UPDATE api_clients c
+SET entreprise_id = (SELECT e.id FROM entreprise e WHERE e.nif = c.nif)
+WHERE c.entreprise_id IS NULL
+  AND (SELECT count(*) FROM entreprise e WHERE e.nif = c.nif) = 1;
+SELECT id, nif FROM api_clients WHERE entreprise_id IS NULL;
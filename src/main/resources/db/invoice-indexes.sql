@@ -0,0 +1,44 @@
+-- Index des recherches fréquentes (factures, entreprises) - PostgreSQL
+--
+-- Script idempotent, à exécuter AVANT le déploiement sur une base existante:
+--   psql "$JDBC_DATABASE_URL" -v ON_ERROR_STOP=1 -f invoice-indexes.sql
+-- CREATE INDEX CONCURRENTLY ne bloque pas les écritures mais ne peut pas s'exécuter
+-- dans une transaction: ne pas utiliser psql --single-transaction.
+-- Lancer avec -v ON_ERROR_STOP=1 pour que le contrôle des doublons arrête le script.
+-- Les noms correspondent aux @Index / @UniqueConstraint des entités: Hibernate
+-- (schema-management=update) ne recrée donc pas ces index au démarrage.
+
+-- 1. Doublons (nif, rn): le RN appartient à la DGI et n'est jamais modifié ici.
+--    Le script liste les doublons et s'arrête: les résoudre (avec l'entreprise et,
+--    pour les factures CONFIRMED, avec la DGI) puis relancer le script.
+SELECT nif, rn, count(*) AS factures,
+       string_agg(id::text || ' (' || coalesce(status, '?') || ')', ', ' ORDER BY updated_at) AS lignes
+FROM invoicerntity
+WHERE nif IS NOT NULL AND rn IS NOT NULL
+GROUP BY nif, rn
+HAVING count(*) > 1
+ORDER BY nif, rn;
+
+DO $$
+DECLARE
+    duplicates integer;
+BEGIN
+    SELECT count(*) INTO duplicates
+    FROM (SELECT 1 FROM invoicerntity
+          WHERE nif IS NOT NULL AND rn IS NOT NULL
+          GROUP BY nif, rn
+          HAVING count(*) > 1) d;
+    IF duplicates > 0 THEN
+        RAISE EXCEPTION '% couple(s) (nif, rn) en double (liste ci-dessus): contrainte uk_invoice_nif_rn non créée', duplicates;
+    END IF;
+END $$;
+
+-- 2. Factures
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS uk_invoice_nif_rn ON invoicerntity (nif, rn);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_invoice_email_uid ON invoicerntity (email, uid);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_invoice_status_updated ON invoicerntity (status, updated_at);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_invoice_items_invoice ON invoice_items (invoice_id);
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_invoice_payments_invoice ON invoice_payments (invoice_id);
+
+-- 3. Entreprises
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_entreprise_email ON entreprise (email);
@@ -0,0 +1,104 @@
+package org.middleware.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.middleware.dto.LoginResponse;
+import org.middleware.models.Entreprise;
+import org.middleware.models.RefreshToken;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+class AuthTokenServiceTest {
+
+    @Inject
+    AuthTokenService authTokenService;
+
+    private UUID entrepriseId;
+
+    @BeforeEach
+    void createEntreprise() {
+        entrepriseId = QuarkusTransaction.requiringNew().call(() -> {
+            Entreprise entreprise = new Entreprise();
+            entreprise.email = "auth-" + UUID.randomUUID() + "@test.local";
+            entreprise.nom = "Test";
+            entreprise.nif = "A0000000T";
+            entreprise.role = "USER";
+            entreprise.password = "non utilisé";
+            entreprise.persist();
+            return entreprise.id;
+        });
+    }
+
+    @AfterEach
+    void deleteEntreprise() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            RefreshToken.delete("entrepriseId", entrepriseId);
+            Entreprise.deleteById(entrepriseId);
+        });
+    }
+
+    @Test
+    void refreshRotatesTheRefreshToken() {
+        LoginResponse login = login();
+
+        LoginResponse refreshed = authTokenService.refresh(login.refreshToken);
+
+        assertNotNull(refreshed);
+        assertNotNull(refreshed.token);
+        assertEquals(entrepriseId, refreshed.id);
+        assertNotEquals(login.refreshToken, refreshed.refreshToken);
+        assertEquals(1, activeRefreshTokens());
+    }
+
+    @Test
+    void reusedRefreshTokenRevokesEveryToken() {
+        LoginResponse login = login();
+        LoginResponse refreshed = authTokenService.refresh(login.refreshToken);
+        assertNotNull(refreshed);
+
+        // Le jeton déjà utilisé est présenté de nouveau: vol présumé
+        assertNull(authTokenService.refresh(login.refreshToken));
+
+        assertEquals(0, activeRefreshTokens());
+        assertNull(authTokenService.refresh(refreshed.refreshToken));
+    }
+
+    @Test
+    void unknownOrBlankRefreshTokenIsRejected() {
+        assertNull(authTokenService.refresh(null));
+        assertNull(authTokenService.refresh(" "));
+        assertNull(authTokenService.refresh("inconnu"));
+    }
+
+    @Test
+    void expiredRefreshTokenIsRejected() {
+        LoginResponse login = login();
+        QuarkusTransaction.requiringNew().run(() ->
+                RefreshToken.update("expiresAt = ?1 where entrepriseId = ?2",
+                        LocalDateTime.now().minusMinutes(1), entrepriseId));
+
+        assertNull(authTokenService.refresh(login.refreshToken));
+    }
+
+    private LoginResponse login() {
+        return QuarkusTransaction.requiringNew().call(() ->
+                authTokenService.issue(Entreprise.findById(entrepriseId)));
+    }
+
+    private long activeRefreshTokens() {
+        return QuarkusTransaction.requiringNew().call(() ->
+                RefreshToken.count("entrepriseId = ?1 and revokedAt is null", entrepriseId));
+    }
+}
@@ -0,0 +1,166 @@
+package org.middleware.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.middleware.client.ApiClientIdentity;
+import org.middleware.models.ApiClient;
+import org.middleware.models.Entreprise;
+import org.middleware.repository.ApiClientRepository;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+class ClientTokenServiceTest {
+
+    @Inject
+    ClientTokenService clientTokenService;
+
+    @Inject
+    ApiClientRepository repository;
+
+    private UUID entrepriseId;
+    private final List<ClientTokenService.IssuedKey> keys = new ArrayList<>();
+
+    @BeforeEach
+    void createEntreprise() {
+        entrepriseId = QuarkusTransaction.requiringNew().call(() -> {
+            Entreprise entreprise = new Entreprise();
+            entreprise.email = "client-" + UUID.randomUUID() + "@test.local";
+            entreprise.nom = "Test";
+            entreprise.nif = "A0000000T";
+            entreprise.role = "USER";
+            entreprise.password = "non utilisé";
+            entreprise.persist();
+            return entreprise.id;
+        });
+    }
+
+    @AfterEach
+    void deleteClients() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            for (ClientTokenService.IssuedKey key : keys) {
+                repository.delete("apiKeyHash", key.apiKeyHash());
+            }
+            Entreprise.deleteById(entrepriseId);
+        });
+        keys.forEach(key -> clientTokenService.invalidate(key.apiKeyHash()));
+    }
+
+    @Test
+    void issuedKeyIsPrefixedAndStoredAsItsHash() {
+        ClientTokenService.IssuedKey key = clientTokenService.issueKey();
+
+        assertTrue(key.keyPrefix().matches("bk_[0-9a-f]{8}"), key.keyPrefix());
+        assertTrue(key.apiKey().startsWith(key.keyPrefix() + "."), key.apiKey());
+        assertEquals(ClientTokenService.hash(key.apiKey()), key.apiKeyHash());
+        assertTrue(key.apiKeyHash().matches("[0-9a-f]{64}"), key.apiKeyHash());
+        assertNotEquals(key.apiKey(), clientTokenService.issueKey().apiKey());
+    }
+
+    @Test
+    void validKeyIsResolvedToItsEntrepriseAndCached() {
+        ClientTokenService.IssuedKey key = createClient(entrepriseId, null);
+        assertNull(clientTokenService.getCached(key.apiKey()));
+
+        ApiClientIdentity client = clientTokenService.getClient(key.apiKey());
+
+        assertNotNull(client);
+        assertEquals("A0000000T", client.nif);
+        assertTrue(client.entrepriseEmail.startsWith("client-"));
+        assertSame(client, clientTokenService.getCached(key.apiKey()));
+    }
+
+    @Test
+    void unknownKeyIsCachedSeparatelyAsInvalid() {
+        String apiKey = clientTokenService.issueKey().apiKey();
+        assertFalse(clientTokenService.isKnownInvalid(apiKey));
+
+        assertNull(clientTokenService.getClient(apiKey));
+        assertNull(clientTokenService.getCached(apiKey));
+        assertTrue(clientTokenService.isKnownInvalid(apiKey));
+        assertNull(clientTokenService.getClient(null));
+        assertNull(clientTokenService.getClient(" "));
+    }
+
+    @Test
+    void createdKeyIsNoLongerCachedAsInvalid() {
+        ClientTokenService.IssuedKey key = createClient(entrepriseId, LocalDateTime.now().minusMinutes(1));
+        assertNull(clientTokenService.getClient(key.apiKey()));
+        assertTrue(clientTokenService.isKnownInvalid(key.apiKey()));
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            repository.update("expiresAt = null where apiKeyHash = ?1", key.apiKeyHash());
+            clientTokenService.invalidate(key.apiKeyHash());
+        });
+
+        assertFalse(clientTokenService.isKnownInvalid(key.apiKey()));
+        assertNotNull(clientTokenService.getClient(key.apiKey()));
+    }
+
+    @Test
+    void expiredOrUnattachedKeyIsRejected() {
+        ClientTokenService.IssuedKey expired = createClient(entrepriseId, LocalDateTime.now().minusMinutes(1));
+        ClientTokenService.IssuedKey unattached = createClient(null, null);
+
+        assertNull(clientTokenService.getClient(expired.apiKey()));
+        assertNull(clientTokenService.getClient(unattached.apiKey()));
+        assertNull(clientTokenService.getCached(unattached.apiKey()));
+    }
+
+    @Test
+    void cachedKeyIsNotServedPastItsExpiration() throws InterruptedException {
+        ClientTokenService.IssuedKey key = createClient(entrepriseId, LocalDateTime.now().plusSeconds(1));
+        assertNotNull(clientTokenService.getClient(key.apiKey()));
+
+        Thread.sleep(1500);
+
+        assertNull(clientTokenService.getCached(key.apiKey()));
+        assertNull(clientTokenService.getClient(key.apiKey()));
+    }
+
+    @Test
+    void invalidateRemovesARevokedKey() {
+        ClientTokenService.IssuedKey key = createClient(entrepriseId, null);
+        assertNotNull(clientTokenService.getClient(key.apiKey()));
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            repository.update("active = false where apiKeyHash = ?1", key.apiKeyHash());
+            clientTokenService.invalidate(key.apiKeyHash());
+        });
+
+        assertNull(clientTokenService.getCached(key.apiKey()));
+        assertNull(clientTokenService.getClient(key.apiKey()));
+    }
+
+    private ClientTokenService.IssuedKey createClient(UUID entreprise, LocalDateTime expiresAt) {
+        ClientTokenService.IssuedKey key = clientTokenService.issueKey();
+        QuarkusTransaction.requiringNew().run(() -> {
+            ApiClient client = new ApiClient();
+            client.apiKeyHash = key.apiKeyHash();
+            client.keyPrefix = key.keyPrefix();
+            client.companyName = "ERP test";
+            client.nif = "A0000000T";
+            client.entrepriseId = entreprise;
+            client.expiresAt = expiresAt;
+            repository.persist(client);
+        });
+        keys.add(key);
+        return key;
+    }
+}
@@ -0,0 +1,143 @@
+package org.middleware.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvRowReaderTest {
+
+    private static final String HEADER = "rn;type;clientNif;clientName;clientType;itemCode;itemName;itemPrice;itemQuantity";
+
+    @TempDir
+    Path dir;
+
+    private final CsvRowReader reader = new CsvRowReader();
+
+    @Test
+    void readsSemicolonRowsAndSkipsHeaderAndBlankLines() throws IOException {
+        List<InvoiceRow> rows = read(HEADER + "\n"
+                + "RN1;FV;A123;Client;PP;I1;Article;100;2\n"
+                + "\n"
+                + "RN2;FV;A123;Client;PP;I2;Article;50;1\n");
+
+        assertEquals(2, rows.size());
+        assertEquals("RN1", rows.get(0).get(0));
+        assertEquals("100", rows.get(0).get(7));
+        assertEquals(2, rows.get(0).getRowNum());
+        assertEquals("RN2", rows.get(1).get(0));
+        assertEquals(4, rows.get(1).getRowNum());
+    }
+
+    @Test
+    void readsQuotedFieldsWithDelimitersQuotesAndLineBreaks() throws IOException {
+        List<InvoiceRow> rows = read(HEADER + "\r\n"
+                + "RN1;FV;A123;\"Dupont; fils\";PP;I1;\"Article \"\"A\"\"\nsur deux lignes\";100;2\r\n"
+                + "RN2;FV;A123;Client;PP;I2;Article;50;1\r\n");
+
+        assertEquals(2, rows.size());
+        assertEquals("Dupont; fils", rows.get(0).get(3));
+        assertEquals("Article \"A\"\nsur deux lignes", rows.get(0).get(6));
+        assertEquals("100", rows.get(0).get(7));
+        // L'enregistrement précédent occupe les lignes 2 et 3
+        assertEquals(4, rows.get(1).getRowNum());
+    }
+
+    @Test
+    void ignoresByteOrderMark() throws IOException {
+        List<InvoiceRow> rows = read("\uFEFF" + HEADER + "\n" + "RN1;FV;A123;Client;PP;I1;Article;100;2\n");
+
+        assertEquals(1, rows.size());
+        assertEquals("RN1", rows.get(0).get(0));
+    }
+
+    @Test
+    void detectsCommaAndTabDelimiters() throws IOException {
+        List<InvoiceRow> comma = read(HEADER.replace(';', ',') + "\n"
+                + "RN1,FV,A123,Client,PP,I1,Article,\"1,5\",2\n");
+        assertEquals("Client", comma.get(0).get(3));
+        assertEquals("1.5", comma.get(0).get(7));
+
+        List<InvoiceRow> tab = read(HEADER.replace(';', '\t') + "\n"
+                + "RN1\tFV\tA123\tClient\tPP\tI1\tArticle\t100\t2\n");
+        assertEquals("Client", tab.get(0).get(3));
+        assertEquals("2", tab.get(0).get(8));
+    }
+
+    @Test
+    void detectsDelimiterFromDataLinesWhenHeaderIsAmbiguous() throws IOException {
+        // L'en-tête contient des virgules dans ses libellés, les données n'en ont pas
+        List<InvoiceRow> rows = read("rn;type, facture;client, nif, nom\n"
+                + "RN1;FV;A123\n"
+                + "RN2;FV;A456\n");
+
+        assertEquals(2, rows.size());
+        assertEquals("FV", rows.get(0).get(1));
+        assertEquals("A456", rows.get(1).get(2));
+    }
+
+    @Test
+    void convertsLocalAmountsInNumericColumnsOnly() throws IOException {
+        List<InvoiceRow> rows = read(HEADER + "\n"
+                + "RN1;FV;A123;1.234,56;PP;I1;Article;1.234,56;\"2,5\"\n");
+
+        assertEquals("1.234,56", rows.get(0).get(3));
+        assertEquals("1234.56", rows.get(0).get(7));
+        assertEquals("2.5", rows.get(0).get(8));
+    }
+
+    @Test
+    void failsOnUnclosedQuote() {
+        assertThrows(IOException.class, () -> read(HEADER + "\n" + "RN1;FV;\"A123;Client\n"));
+    }
+
+    @Test
+    void localDecimal() {
+        assertEquals("1234.56", CsvRowReader.localDecimal("1.234,56"));
+        assertEquals("1234.56", CsvRowReader.localDecimal("1,234.56"));
+        assertEquals("1234.56", CsvRowReader.localDecimal("1 234,56"));
+        assertEquals("1000", CsvRowReader.localDecimal("1\u00A0000"));
+        assertEquals("1000", CsvRowReader.localDecimal("1\u202F000"));
+        assertEquals("1000", CsvRowReader.localDecimal("1 000"));
+        assertEquals("12.5", CsvRowReader.localDecimal("12,5"));
+        assertEquals("12.5", CsvRowReader.localDecimal("12.5"));
+        assertEquals("1234567", CsvRowReader.localDecimal("1,234,567"));
+        assertEquals("1234567", CsvRowReader.localDecimal("1.234.567"));
+        assertEquals("-3", CsvRowReader.localDecimal("-3"));
+        assertEquals("abc", CsvRowReader.localDecimal("abc"));
+        assertEquals("12,5 USD", CsvRowReader.localDecimal("12,5 USD"));
+    }
+
+    @Test
+    void emptyFileHasNoRows() throws IOException {
+        assertEquals(0, read("").size());
+        assertEquals(0, read(HEADER + "\n").size());
+    }
+
+    @Test
+    void emptyCellsAreNull() throws IOException {
+        List<InvoiceRow> rows = read(HEADER + "\n" + "RN1;FV;;  ;PP;I1;Article;100;2\n");
+
+        assertNull(rows.get(0).get(2));
+        assertNull(rows.get(0).get(3));
+        assertNull(rows.get(0).get(20));
+    }
+
+    private List<InvoiceRow> read(String content) throws IOException {
+        File file = dir.resolve("import.csv").toFile();
+        Files.writeString(file.toPath(), content, StandardCharsets.UTF_8);
+        List<InvoiceRow> rows = new ArrayList<>();
+        reader.read(file, rows::add);
+        return rows;
+    }
+}
@@ -0,0 +1,140 @@
+package org.middleware.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class DgiRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private DgiRateLimiter limiter;
+
+    @AfterEach
+    void shutdown() {
+        if (limiter != null) {
+            limiter.shutdown();
+        }
+    }
+
+    @Test
+    void bucketServesBurstThenQueuesInArrivalOrder() {
+        DgiRateLimiter.TokenBucket bucket = new DgiRateLimiter.TokenBucket(1, 2);
+
+        assertEquals(0, bucket.reserve(10 * SECOND));
+        assertEquals(0, bucket.reserve(10 * SECOND));
+
+        long first = bucket.reserve(10 * SECOND);
+        long second = bucket.reserve(10 * SECOND);
+        assertTrue(first > 0 && first <= SECOND, "attente " + first);
+        assertTrue(second > first && second <= 2 * SECOND, "attente " + second);
+    }
+
+    @Test
+    void bucketRejectsBeyondMaxWaitWithoutConsuming() {
+        DgiRateLimiter.TokenBucket bucket = new DgiRateLimiter.TokenBucket(1, 1);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(-1, bucket.reserve(SECOND / 2));
+
+        // La réservation refusée n'a pas allongé la file
+        long wait = bucket.reserve(2 * SECOND);
+        assertTrue(wait > SECOND / 2 && wait <= SECOND, "attente " + wait);
+    }
+
+    @Test
+    void bucketIsFullOnlyWhenRefilled() throws InterruptedException {
+        DgiRateLimiter.TokenBucket bucket = new DgiRateLimiter.TokenBucket(1000, 1);
+        assertTrue(bucket.isFull());
+
+        bucket.reserve(SECOND);
+        assertFalse(bucket.isFull());
+
+        Thread.sleep(20);
+        assertTrue(bucket.isFull());
+    }
+
+    @Test
+    void acquireRejectsWhenQueueExceedsMaxWait() {
+        limiter = limiter(1, 1, Duration.ZERO);
+
+        assertTrue(limiter.acquire("A123").toCompletableFuture().isDone());
+
+        CompletableFuture<Void> rejected = limiter.acquire("A123").toCompletableFuture();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(DgiRateLimitExceededException.class, e.getCause());
+
+        assertEquals(1L, limiter.getMetrics().get("acquired"));
+        assertEquals(1L, limiter.getMetrics().get("rejected"));
+    }
+
+    @Test
+    void acquireDelaysWithinMaxWait() throws Exception {
+        limiter = limiter(20, 1, Duration.ofSeconds(5));
+
+        assertTrue(limiter.acquire("A123").toCompletableFuture().isDone());
+
+        CompletableFuture<Void> delayed = limiter.acquire("A123").toCompletableFuture();
+        delayed.get(2, TimeUnit.SECONDS);
+
+        assertEquals(2L, limiter.getMetrics().get("acquired"));
+        assertEquals(1L, limiter.getMetrics().get("delayed"));
+        assertEquals(0L, limiter.getMetrics().get("rejected"));
+    }
+
+    @Test
+    void bucketsAreIndependentPerEntreprise() {
+        limiter = limiter(1, 1, Duration.ZERO);
+
+        assertTrue(limiter.acquire("A123").toCompletableFuture().isDone());
+        CompletableFuture<Void> other = limiter.acquire("B456").toCompletableFuture();
+
+        assertTrue(other.isDone());
+        assertFalse(other.isCompletedExceptionally());
+    }
+
+    @Test
+    void disabledLimiterNeverWaits() {
+        limiter = limiter(1, 1, Duration.ZERO);
+        limiter.enabled = false;
+
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<Void> permit = limiter.acquire("A123").toCompletableFuture();
+            assertTrue(permit.isDone());
+            assertFalse(permit.isCompletedExceptionally());
+        }
+        assertEquals(0, limiter.getMetrics().get("entreprises"));
+    }
+
+    @Test
+    void evictIdleRemovesRefilledBuckets() throws InterruptedException {
+        limiter = limiter(1000, 1, Duration.ZERO);
+
+        limiter.acquire("A123");
+        assertEquals(1, limiter.getMetrics().get("entreprises"));
+
+        Thread.sleep(20);
+        limiter.evictIdle();
+        assertEquals(0, limiter.getMetrics().get("entreprises"));
+    }
+
+    private static DgiRateLimiter limiter(double permitsPerSecond, int burst, Duration maxWait) {
+        DgiRateLimiter limiter = new DgiRateLimiter();
+        limiter.enabled = true;
+        limiter.permitsPerSecond = permitsPerSecond;
+        limiter.burst = burst;
+        limiter.maxWait = maxWait;
+        limiter.init();
+        return limiter;
+    }
+}
@@ -0,0 +1,83 @@
+package org.middleware.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class ExcelImportServiceTest {
+
+    private final ExcelImportService service = new ExcelImportService();
+
+    @Test
+    void validRowHasNoError() {
+        assertNull(service.validateRow(row()));
+    }
+
+    @Test
+    void rejectsNonNumericAmounts() {
+        InvoiceRow price = row(7, "12abc");
+        assertEquals("Prix invalide (nombre attendu): 12abc", service.validateRow(price));
+
+        InvoiceRow quantity = row(8, "deux");
+        assertEquals("Quantité invalide (nombre attendu): deux", service.validateRow(quantity));
+
+        InvoiceRow specificTax = row(14, "n/a");
+        assertEquals("Montant de taxe spécifique invalide (nombre attendu): n/a", service.validateRow(specificTax));
+
+        assertEquals("Le prix doit être supérieur à 0", service.validateRow(row(7, "0")));
+    }
+
+    @Test
+    void referenceDescriptionWithoutCurrencyIsAccepted() {
+        assertNull(service.validateRow(row(19, "Avoir sur facture RN0")));
+    }
+
+    @Test
+    void readsCurrencyFromColumnsUToW() {
+        String[] values = values();
+        values[20] = "USD";
+        values[21] = "2024-01-15";
+        values[22] = "2850.5";
+        assertNull(service.validateRow(new InvoiceRow(2, values)));
+
+        values[21] = null;
+        assertEquals("Date de devise manquante quand le code devise est fourni",
+                service.validateRow(new InvoiceRow(2, values)));
+
+        values[21] = "2024-01-15";
+        values[22] = "taux";
+        assertEquals("Taux de change invalide (nombre attendu): taux", service.validateRow(new InvoiceRow(2, values)));
+
+        values[22] = "0";
+        assertEquals("Le taux de change doit être supérieur à 0", service.validateRow(new InvoiceRow(2, values)));
+    }
+
+    private static InvoiceRow row() {
+        return new InvoiceRow(2, values());
+    }
+
+    private static InvoiceRow row(int column, String value) {
+        String[] values = values();
+        values[column] = value;
+        return new InvoiceRow(2, values);
+    }
+
+    private static String[] values() {
+        String[] values = new String[InvoiceRow.COLUMNS];
+        values[0] = "RN1";
+        values[1] = "FV";
+        values[2] = "NIF123";
+        values[3] = "Client";
+        values[4] = "PM";
+        values[5] = "I1";
+        values[6] = "Article";
+        values[7] = "100";
+        values[8] = "2";
+        values[9] = "B";
+        values[10] = "BIE";
+        values[11] = "TTC";
+        values[12] = "CDF";
+        return values;
+    }
+}
@@ -0,0 +1,182 @@
+package org.middleware.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.middleware.models.InvoiceAttempt;
+import org.middleware.models.InvoiceEntity;
+
+import io.quarkus.narayana.jta.QuarkusTransaction;
+import io.quarkus.test.junit.QuarkusMock;
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+
+@QuarkusTest
+class InvoiceBatchSubmitterTest {
+
+    private static final int INVOICES = 20;
+
+    @Inject
+    InvoiceBatchSubmitter submitter;
+
+    private FakeDgiService dgi;
+    private final List<String> nifs = new ArrayList<>();
+
+    @BeforeEach
+    void installFakeDgi() {
+        dgi = new FakeDgiService();
+        QuarkusMock.installMockForType(dgi, DgiService.class);
+    }
+
+    @AfterEach
+    void deleteInvoices() {
+        QuarkusTransaction.requiringNew().run(() -> {
+            for (String nif : nifs) {
+                List<UUID> ids = InvoiceEntity.<InvoiceEntity>list("nif", nif).stream().map(i -> i.id).toList();
+                if (!ids.isEmpty()) {
+                    InvoiceAttempt.delete("invoiceId in ?1", ids);
+                }
+                InvoiceEntity.delete("nif", nif);
+            }
+        });
+    }
+
+    @Test
+    void resultsFollowInputOrderWhateverTheCompletionOrder() {
+        // Moins de factures que le plafond: toutes partent ensemble, les dernières finissent en premier
+        int count = Math.min(5, perEntrepriseCap());
+        String nif = newNif();
+        List<InvoiceEntity> invoices = createInvoices(nif, count);
+        List<InvoiceEntity> notified = new CopyOnWriteArrayList<>();
+
+        List<InvoiceEntity> results = submitter.submitAll(invoices, nif, "token", notified::add);
+
+        assertEquals(count, results.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(invoices.get(i).rn, results.get(i).rn);
+            assertEquals("CONFIRMED", results.get(i).status);
+        }
+        assertEquals(count, notified.size());
+        assertTrue(dgi.completionOrder.indexOf(invoices.get(0).rn)
+                > dgi.completionOrder.indexOf(invoices.get(count - 1).rn), "ordre " + dgi.completionOrder);
+
+        QuarkusTransaction.requiringNew().run(() -> {
+            for (InvoiceEntity invoice : invoices) {
+                InvoiceEntity stored = InvoiceEntity.findById(invoice.id);
+                assertEquals("CONFIRMED", stored.status);
+                assertEquals(1, stored.submitAttempts);
+            }
+        });
+    }
+
+    @Test
+    void concurrencyIsCappedPerEntreprise() throws Exception {
+        int cap = perEntrepriseCap();
+        String first = newNif();
+        String second = newNif();
+        List<InvoiceEntity> firstInvoices = createInvoices(first, INVOICES);
+        List<InvoiceEntity> secondInvoices = createInvoices(second, INVOICES);
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<InvoiceEntity>> a = callers.submit(() -> submitter.submitAll(firstInvoices, first, "token"));
+            Future<List<InvoiceEntity>> b = callers.submit(() -> submitter.submitAll(secondInvoices, second, "token"));
+            assertEquals(INVOICES, a.get(30, TimeUnit.SECONDS).size());
+            assertEquals(INVOICES, b.get(30, TimeUnit.SECONDS).size());
+        } finally {
+            callers.shutdown();
+        }
+
+        for (String nif : List.of(first, second)) {
+            int peak = dgi.peakPerEntreprise.get(nif).get();
+            assertTrue(peak <= cap, "pic " + peak + " pour un plafond de " + cap);
+            assertTrue(peak > 1, "aucune soumission parallèle");
+        }
+        // Le plafond est propre à chaque entreprise: les deux lots avancent en même temps
+        assertTrue(dgi.peakOverall.get() > cap, "pic global " + dgi.peakOverall.get());
+    }
+
+    private static int perEntrepriseCap() {
+        return ConfigProvider.getConfig()
+                .getOptionalValue("dgi.batch.max-concurrency-per-entreprise", Integer.class).orElse(8);
+    }
+
+    private String newNif() {
+        String nif = "T" + UUID.randomUUID().toString().substring(0, 8);
+        nifs.add(nif);
+        return nif;
+    }
+
+    private List<InvoiceEntity> createInvoices(String nif, int count) {
+        return QuarkusTransaction.requiringNew().call(() -> {
+            List<InvoiceEntity> invoices = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                InvoiceEntity invoice = new InvoiceEntity();
+                invoice.nif = nif;
+                invoice.rn = String.format("RN-%02d", i);
+                invoice.email = nif + "@test.local";
+                invoice.type = "FV";
+                invoice.status = "PENDING";
+                invoice.persist();
+                invoices.add(invoice);
+            }
+            return invoices;
+        });
+    }
+
+    /**
+     * DGI simulée: PHASE 1 d'autant plus lente que la facture est en tête de lot,
+     * avec le relevé des soumissions simultanées par entreprise
+     */
+    static final class FakeDgiService extends DgiService {
+
+        final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> peakPerEntreprise = new ConcurrentHashMap<>();
+        final AtomicInteger overall = new AtomicInteger();
+        final AtomicInteger peakOverall = new AtomicInteger();
+        final List<String> completionOrder = new CopyOnWriteArrayList<>();
+
+        @Override
+        public CompletionStage<InvoiceEntity> submitInvoicePhase1Async(InvoiceEntity invoice, String dgiToken) {
+            int current = inFlight.computeIfAbsent(invoice.nif, nif -> new AtomicInteger()).incrementAndGet();
+            peakPerEntreprise.computeIfAbsent(invoice.nif, nif -> new AtomicInteger()).accumulateAndGet(current, Math::max);
+            peakOverall.accumulateAndGet(overall.incrementAndGet(), Math::max);
+
+            int index = Integer.parseInt(invoice.rn.substring(3));
+            long delayMs = 20 + 50L * (INVOICES - index);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.get(invoice.nif).decrementAndGet();
+                overall.decrementAndGet();
+                completionOrder.add(invoice.rn);
+                invoice.status = "PHASE1";
+                invoice.uid = "UID-" + invoice.rn;
+                return invoice;
+            }, CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public CompletionStage<InvoiceEntity> confirmInvoicePhase2Async(InvoiceEntity invoice, String dgiToken) {
+            invoice.status = "CONFIRMED";
+            invoice.qrCode = "QR-" + invoice.rn;
+            return CompletableFuture.completedFuture(invoice);
+        }
+    }
+}
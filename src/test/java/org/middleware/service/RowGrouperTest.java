@@ -0,0 +1,85 @@
+package org.middleware.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class RowGrouperTest {
+
+    private final List<ExcelImportService.RowGroup> groups = new ArrayList<>();
+    private final ExcelImportService.RowGrouper grouper = new ExcelImportService.RowGrouper(groups::add);
+
+    @Test
+    void groupsConsecutiveLinesOfTheSameInvoice() {
+        grouper.accept(row(2, "RN1"));
+        grouper.accept(row(3, "RN1"));
+        grouper.accept(row(4, "RN2"));
+        grouper.finish();
+
+        assertEquals(2, groups.size());
+        assertEquals("RN1", groups.get(0).rn());
+        assertEquals(2, groups.get(0).rows().size());
+        assertEquals(3, groups.get(0).lastRow());
+        assertNull(groups.get(0).error());
+        assertEquals("RN2", groups.get(1).rn());
+        assertEquals(4, groups.get(1).lastRow());
+    }
+
+    @Test
+    void emitsAGroupOnlyWhenItIsComplete() {
+        grouper.accept(row(2, "RN1"));
+        grouper.accept(row(3, "RN1"));
+        assertTrue(groups.isEmpty());
+
+        grouper.accept(row(4, "RN2"));
+        assertEquals(1, groups.size());
+
+        grouper.finish();
+        assertEquals(2, groups.size());
+    }
+
+    @Test
+    void flagsAnInvoiceWhoseLinesAreNotConsecutive() {
+        grouper.accept(row(2, "RN1"));
+        grouper.accept(row(3, "RN2"));
+        grouper.accept(row(4, "RN1"));
+        grouper.finish();
+
+        assertEquals(3, groups.size());
+        assertNull(groups.get(0).error());
+        assertNull(groups.get(1).error());
+        assertEquals("RN1", groups.get(2).rn());
+        assertTrue(groups.get(2).error().contains("RN RN1 déjà utilisé"), groups.get(2).error());
+    }
+
+    @Test
+    void linesWithoutRnAreSeparateGroups() {
+        grouper.accept(row(2, null));
+        grouper.accept(row(3, null));
+        grouper.finish();
+
+        assertEquals(2, groups.size());
+        assertNull(groups.get(0).error());
+        assertNull(groups.get(1).error());
+    }
+
+    @Test
+    void finishWithoutLinesEmitsNothing() {
+        grouper.finish();
+        grouper.finish();
+
+        assertTrue(groups.isEmpty());
+    }
+
+    private static InvoiceRow row(int rowNum, String rn) {
+        String[] values = new String[InvoiceRow.COLUMNS];
+        values[0] = rn;
+        values[1] = "FV";
+        return new InvoiceRow(rowNum, values);
+    }
+}